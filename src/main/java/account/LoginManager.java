@@ -1,16 +1,27 @@
 package account;
 
 import database.StorageHashTable;
+import database.StorageOptions;
 
 /**
  *
  * @author Jiyansh
  */
-public class LoginManager {
+public class LoginManager implements AutoCloseable {
     final private StorageHashTable accountsTable;
     
     public LoginManager(String fileName, int maxNumAccounts) {
-        accountsTable = new StorageHashTable(System.getProperty("user.dir"), fileName, maxNumAccounts, 100, 2, new int[]{100, 91});
+        this(fileName, maxNumAccounts, new StorageOptions());
+    }
+
+    /**
+     * Opens the accounts table with the given storage options.
+     * @param fileName Name of the accounts table file.
+     * @param maxNumAccounts The most accounts that can be stored.
+     * @param options How the accounts table is stored.
+     */
+    public LoginManager(String fileName, int maxNumAccounts, StorageOptions options) {
+        accountsTable = new StorageHashTable(System.getProperty("user.dir"), fileName, maxNumAccounts, 100, 2, new int[]{100, 91}, options);
     }
     
     /**
@@ -100,6 +111,14 @@ public class LoginManager {
         return accountsTable.containsKey(username);
     }   
     
+    /**
+     * Closes the accounts table.
+     */
+    @Override
+    public void close() {
+        accountsTable.close();
+    }
+
     /**
      * Improves security by overwriting a password array with zeros.
      * @param password the password to wipe.
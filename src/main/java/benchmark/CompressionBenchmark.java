@@ -0,0 +1,136 @@
+package benchmark;
+
+import database.StorageHashTable;
+import database.StorageOptions;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares uncompressed and compressed StorageHashTable blocks on a table shaped like the library's book table. For each block format it
+ * reports the file size, the number of 4 KB pages the table takes up and the time spent adding, reading and changing every entry, which shows
+ * how much CPU the compression costs for the I/O it saves.
+ * <p>
+ * Usage: <code>CompressionBenchmark [entries] [rounds] [block sizes...]</code>
+ *
+ * @author Jiyansh Agarwal
+ */
+public class CompressionBenchmark {
+
+    final static private String[] AUTHORS = {"Rick Riordan", "J.K. Rowling", "Suzanne Collins", "George Orwell", "Lois Lowry",
+        "J.R.R Tolkien", "Khaled Hosseini", "Zora Neale Hurston", "Roland Smith", "Orson Scott Card"};
+    final static private String[] WORDS = {"The", "of", "and", "Lord", "Flies", "Games", "House", "Hades", "Giver", "Kite", "Runner",
+        "Watching", "God", "Maze", "Bones", "Lightning", "Thief", "Order", "Phoenix", "Stone"};
+    final static private String[] STUDENTS = {"Amisha", "Ian", "Jayesh", "Kajol", "Kavita", "Rohan", "Sonia"};
+
+    public static void main(String[] args) throws IOException {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1500;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int[] blockSizes = {0, 160, 128};
+
+        if (args.length > 2) {
+            blockSizes = new int[args.length - 2];
+
+            for (int i = 2; i < args.length; i++) {
+                blockSizes[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+
+        int slots = entries * 4 / 3;
+        String[][] books = makeBooks(entries);
+
+        System.out.printf("%d entries in %d slots, %d rounds%n", entries, slots, rounds);
+        System.out.printf("%-12s %10s %7s %9s %9s %9s %7s%n", "block", "file", "pages", "add ms", "read ms", "change ms", "failed");
+
+        for (int blockSize : blockSizes) {
+            run(blockSize, slots, rounds, books);
+        }
+    }
+
+    /**
+     * Times one block format and prints its results.
+     *
+     * @param blockSize The compressed block size. 0 for uncompressed blocks.
+     * @param slots The number of blocks in the table.
+     * @param rounds How many times to repeat every measurement. The fastest round is reported.
+     * @param books The entries to store. The first element of each is the key.
+     * @throws IOException if the temporary directory could not be created.
+     */
+    private static void run(int blockSize, int slots, int rounds, String[][] books) throws IOException {
+        long add = Long.MAX_VALUE;
+        long read = Long.MAX_VALUE;
+        long change = Long.MAX_VALUE;
+        long fileLength = 0;
+        int failed = 0;
+
+        for (int round = 0; round < rounds; round++) {
+            File directory = Files.createTempDirectory("compression-benchmark").toFile();
+            StorageOptions options = new StorageOptions().compressedBlockSize(blockSize);
+
+            try (StorageHashTable table = new StorageHashTable(directory.getPath(), "Books.library", slots, 100, 5,
+                    new int[]{100, 5, 10, 1, 100}, options)) {
+                failed = 0;
+                long start = System.nanoTime();
+
+                for (String[] book : books) {
+                    if (table.addEntry(book[0], new String[]{book[1], book[2], book[3], book[4], book[5]}) == -1) {
+                        failed++;
+                    }
+                }
+                add = Math.min(add, System.nanoTime() - start);
+
+                start = System.nanoTime();
+
+                for (String[] book : books) {
+                    table.readEntry(book[0]);
+                }
+                read = Math.min(read, System.nanoTime() - start);
+
+                start = System.nanoTime();
+
+                for (String[] book : books) {
+                    table.changeRecords(book[0], new String[]{book[1], book[2], book[3], "0", STUDENTS[book[0].length() % STUDENTS.length]});
+                }
+                change = Math.min(change, System.nanoTime() - start);
+
+                fileLength = table.getFileLength();
+            } finally {
+                for (File file : directory.listFiles()) {
+                    file.delete();
+                }
+                directory.delete();
+            }
+        }
+
+        System.out.printf("%-12s %10d %7d %9.1f %9.1f %9.1f %7d%n", blockSize == 0 ? "uncompressed" : blockSize + " bytes", fileLength,
+                (fileLength + 4095) / 4096, add / 1e6, read / 1e6, change / 1e6, failed);
+    }
+
+    /**
+     * Makes book entries that look like the library's: a title, an author, a page count, a language, an availability flag and a mostly empty
+     * borrower.
+     *
+     * @param count The number of books.
+     * @return The books. The first element of each is the title.
+     */
+    private static String[][] makeBooks(int count) {
+        Random random = new Random(42);
+        String[][] books = new String[count][];
+
+        for (int i = 0; i < count; i++) {
+            StringBuilder title = new StringBuilder();
+
+            for (int words = 2 + random.nextInt(5); words > 0; words--) {
+                title.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            title.append(i);
+
+            boolean checkedOut = random.nextInt(4) == 0;
+
+            books[i] = new String[]{title.toString(), AUTHORS[random.nextInt(AUTHORS.length)], Integer.toString(100 + random.nextInt(900)),
+                "English", checkedOut ? "0" : "1", checkedOut ? STUDENTS[random.nextInt(STUDENTS.length)] : ""};
+        }
+        return books;
+    }
+}
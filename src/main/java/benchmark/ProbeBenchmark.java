@@ -0,0 +1,133 @@
+package benchmark;
+
+import database.ProbingScheme;
+import database.StorageHashTable;
+import database.StorageOptions;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares how far StorageHashTable lookups probe with linear probing and with Robin Hood hashing. For each scheme and load factor it fills
+ * a table that never grows, deletes and adds back part of it to leave the deleted blocks a long lived table has, then reports the mean,
+ * median, 90th and 99th percentile and longest probe of lookups for keys that are in the table and for keys that aren't.
+ * <p>
+ * Usage: <code>ProbeBenchmark [blocks] [churn percent] [load factors...]</code>
+ *
+ * @author Jiyansh Agarwal
+ */
+public class ProbeBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int blocks = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int churn = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        double[] loads = {0.5, 0.7, 0.8, 0.9, 0.95};
+
+        if (args.length > 2) {
+            loads = new double[args.length - 2];
+
+            for (int i = 2; i < args.length; i++) {
+                loads[i - 2] = Double.parseDouble(args[i]);
+            }
+        }
+
+        System.out.printf("%d blocks, %d%% of the entries deleted and added back%n", blocks, churn);
+        System.out.printf("%-11s %5s %-5s %7s %5s %5s %5s %6s%n", "scheme", "load", "keys", "mean", "p50", "p90", "p99", "max");
+
+        for (double load : loads) {
+            for (ProbingScheme probing : ProbingScheme.values()) {
+                run(probing, blocks, load, churn);
+            }
+        }
+    }
+
+    /**
+     * Fills a table with one probing scheme and prints the probe counts of its lookups.
+     *
+     * @param probing The probing scheme.
+     * @param blocks The number of blocks in the table.
+     * @param load The fraction of the blocks to fill.
+     * @param churn The percent of the entries to delete and add back under new keys.
+     * @throws IOException if the temporary directory could not be created.
+     */
+    private static void run(ProbingScheme probing, int blocks, double load, int churn) throws IOException {
+        File directory = Files.createTempDirectory("probe-benchmark").toFile();
+        StorageOptions options = new StorageOptions().probing(probing).loadFactor(0);
+        Random random = new Random(42);
+        int entries = (int) (blocks * load);
+        String[] keys = new String[entries];
+
+        try (StorageHashTable table = new StorageHashTable(directory.getPath(), "Probe.library", blocks, 20, 1, new int[]{10}, options)) {
+            for (int i = 0; i < entries; i++) {
+                keys[i] = "key " + i;
+                table.addEntry(keys[i], new String[]{Integer.toString(i)});
+            }
+
+            for (int i = 0; i < entries * churn / 100; i++) {
+                int victim = random.nextInt(entries);
+                table.deleteEntry(keys[victim]);
+                keys[victim] = "key " + (entries + i);
+                table.addEntry(keys[victim], new String[]{Integer.toString(victim)});
+            }
+
+            long[] hits = new long[entries];
+            long[] misses = new long[entries];
+
+            for (int i = 0; i < entries; i++) {
+                hits[i] = probes(table, keys[i]);
+                misses[i] = probes(table, "missing " + i);
+            }
+
+            print(probing, load, "hit", hits);
+            print(probing, load, "miss", misses);
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * Looks up a key and counts the blocks it probed.
+     *
+     * @param table The table to look in.
+     * @param key The key to look up.
+     * @return The number of blocks probed.
+     */
+    private static long probes(StorageHashTable table, String key) {
+        long before = table.getStats().getProbes();
+        table.containsKey(key);
+        return table.getStats().getProbes() - before;
+    }
+
+    /**
+     * Prints the distribution of a set of probe counts.
+     *
+     * @param probing The probing scheme.
+     * @param load The fraction of the blocks in use.
+     * @param kind Whether the lookups were for keys in the table.
+     * @param probes The probe count of each lookup.
+     */
+    private static void print(ProbingScheme probing, double load, String kind, long[] probes) {
+        Arrays.sort(probes);
+        double mean = Arrays.stream(probes).average().orElse(0);
+
+        System.out.printf("%-11s %5.2f %-5s %7.2f %5d %5d %5d %6d%n", probing, load, kind, mean, percentile(probes, 50), percentile(probes, 90),
+                percentile(probes, 99), probes.length == 0 ? 0 : probes[probes.length - 1]);
+    }
+
+    /**
+     * @param sorted The probe counts in order.
+     * @param percent The percentile.
+     * @return the probe count at the percentile. 0 if there are none.
+     */
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+}
@@ -0,0 +1,874 @@
+package database;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * One generation of a StorageHashTable's blocks: its table file, its key file and the keys and headers of its blocks, which are kept in
+ * memory so probing never reads the table file. A table normally has one. While it grows it has two, the old one its blocks are being moved
+ * out of and the larger one they are moved into. Each generation places its entries with its own probing scheme. The full hash of every key
+ * is kept next to it, so a probe only compares the keys of blocks whose hash matches.
+ *
+ * @author Jiyansh Agarwal
+ */
+class BlockFile implements AutoCloseable {
+
+    final static int DELETED = Integer.MAX_VALUE;                   //Integer.MAX_VALUE is a flag for a deleted element.
+    final static private int READ_SIZE = 64 * 1024;                 //How much of the key or table file is read at once when the index is loaded.
+    final static private int READ_GAP = 4 * 1024;                   //Blocks this close together are read in one piece by a batched read.
+
+    final int NUMBER_OF_BLOCKS;
+    final ProbingScheme PROBING;
+    final private BlockLayout LAYOUT;
+    final private int BLOCK_SIZE;
+    final private int KEY_SIZE;
+    final private DataSaver SAVE;
+    final private DataSaver KEY_SAVE;
+    private String[] keys;
+    private int[] headers;
+    private int[] hashes;                                           //The full hash of each key. 0 for blocks that aren't in use.
+    private int numOfEntries = 0;
+    private int numOfTombstones = 0;
+
+    /**
+     * Opens the table and key files of a generation, creating them if they don't exist. The index is empty until it is loaded.
+     *
+     * @param tablePath Path of the table file.
+     * @param keyPath Path of the key file.
+     * @param numberOfBlocks The number of blocks in the generation.
+     * @param probing How entries are placed in the blocks.
+     * @param layout The layout of the blocks.
+     * @param keySize The size of the key slot, including the two byte length.
+     * @param options How the files are stored.
+     */
+    BlockFile(String tablePath, String keyPath, int numberOfBlocks, ProbingScheme probing, BlockLayout layout, int keySize,
+            StorageOptions options) {
+        NUMBER_OF_BLOCKS = numberOfBlocks;
+        PROBING = probing;
+        LAYOUT = layout;
+        BLOCK_SIZE = layout.BLOCK_SIZE;
+        KEY_SIZE = keySize;
+        SAVE = new DataSaver(tablePath, (long) numberOfBlocks * BLOCK_SIZE, StorageHashTable.segmentOptions(options, BLOCK_SIZE));
+        KEY_SAVE = new DataSaver(keyPath, keyPosition(numberOfBlocks + 1), StorageHashTable.segmentOptions(options, keySize));
+        keys = new String[numberOfBlocks];
+        headers = new int[numberOfBlocks];
+        hashes = new int[numberOfBlocks];
+    }
+
+    /**
+     * Loads the index from a snapshot.
+     *
+     * @param snapshot The snapshot.
+     * @return True if the snapshot could be used. The index is left empty otherwise.
+     */
+    boolean load(TableSnapshot snapshot) {
+        int[] snapshotHeaders = new int[NUMBER_OF_BLOCKS];
+        String[] snapshotKeys = snapshot.load(NUMBER_OF_BLOCKS, LAYOUT, snapshotHeaders);
+
+        if (snapshotKeys == null) {
+            return false;
+        }
+
+        keys = snapshotKeys;
+        headers = snapshotHeaders;
+        hashes = new int[NUMBER_OF_BLOCKS];
+        numOfEntries = 0;
+        numOfTombstones = 0;
+
+        for (int i = 0; i < NUMBER_OF_BLOCKS; i++) {
+            if (keys[i] != null) {
+                hashes[i] = keys[i].hashCode();
+                numOfEntries++;
+            } else if (headers[i] == DELETED) {
+                numOfTombstones++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Loads the index from the key and table files.
+     */
+    void load() {
+        keys = new String[NUMBER_OF_BLOCKS];
+        headers = new int[NUMBER_OF_BLOCKS];
+        hashes = new int[NUMBER_OF_BLOCKS];
+        numOfEntries = 0;
+        numOfTombstones = 0;
+
+        loadKeys();
+        loadHeaders();
+        reconcile();
+    }
+
+    /**
+     * Takes over the index of another generation with the same number of blocks, so files that were only moved don't have to be read again.
+     *
+     * @param other The generation whose files these are.
+     */
+    void copyIndex(BlockFile other) {
+        keys = other.keys;
+        headers = other.headers;
+        hashes = other.hashes;
+        numOfEntries = other.numOfEntries;
+        numOfTombstones = other.numOfTombstones;
+    }
+
+    /**
+     * Gets the block a key hashes to.
+     *
+     * @param key The key.
+     * @return The block number. Cannot be zero.
+     */
+    int homeBlock(String key) {
+        return homeBlock(key.hashCode());
+    }
+
+    /**
+     * Gets the block a full key hash maps to.
+     *
+     * @param hash The key's full hash.
+     * @return The block number. Cannot be zero.
+     */
+    int homeBlock(int hash) {
+        int notNegativeHash = hash & 0x7FFFFFFF;                            //Makes the hashcode positive by removing the sign bit.
+        return (notNegativeHash % NUMBER_OF_BLOCKS) + 1;                    //Hash can't be 0 because that is used to denote empty block.
+    }
+
+    /**
+     * Probes for a key, starting at the block it hashes to. Only the in memory headers and keys are read, so a lookup touches the table
+     * file only when the matched block itself is read. A block is only checked against the key if its full hash matches, so most blocks are
+     * passed over with two int comparisons. Deleted blocks are stepped over, since the key may have been stored past them. With Robin Hood
+     * hashing the probe also stops at the first entry that is closer to its own block than the key would be.
+     *
+     * @param key The key to find.
+     * @param stats The stats the lookup is counted in. Null if it isn't a lookup made for the caller.
+     * @return The block number. -1 if the key isn't found.
+     */
+    int find(String key, IOStats stats) {
+        long start = System.nanoTime();
+        int hash = key.hashCode();
+        int block = homeBlock(hash);
+        int blockProbe = block;
+        int probes = 0;
+        int found = -1;
+
+        do {
+            int header = headers[blockProbe - 1];
+            probes++;
+
+            if (header == 0 || (PROBING == ProbingScheme.ROBIN_HOOD && header != DELETED && distance(blockProbe) < probes - 1)) {
+                break;
+            } else if (header == block && hashes[blockProbe - 1] == hash && key.equals(keys[blockProbe - 1])) {
+                found = blockProbe;
+                break;
+            }
+
+            blockProbe = next(blockProbe);                             //If at the end of file, start at the top again.
+        } while (blockProbe != block);                                  //Keep searching unitl back to the start.
+
+        if (stats != null) {
+            stats.recordLookup(probes, System.nanoTime() - start);
+        }
+        return found;
+    }
+
+    /**
+     * Adds a block for a key that isn't in the generation yet. Linear probing puts it in the first empty or deleted block. Robin Hood
+     * hashing puts it after the entries that have probed at least as far, and moves the entries from there to the next empty block along
+     * one, last first, so a crash part way through never loses an entry.
+     *
+     * @param key The key stored in the block.
+     * @param block The encoded block.
+     * @return The block number it was written to. -1 if there is no free block or a write failed.
+     */
+    int add(String key, ByteBuffer block) {
+        int home = homeBlock(key);
+        int blockProbe = home;
+        int distance = 0;
+
+        while (inUse(blockProbe) && (PROBING == ProbingScheme.LINEAR || distance(blockProbe) >= distance)) {
+            blockProbe = next(blockProbe);
+            distance++;
+
+            if (blockProbe == home) {
+                return -1;                                              //Every block is in use.
+            }
+        }
+
+        int free = blockProbe;
+
+        while (inUse(free)) {
+            free = next(free);
+
+            if (free == blockProbe) {
+                return -1;
+            }
+        }
+
+        for (int to = free; to != blockProbe; to = previous(to)) {
+            if (!copy(previous(to), to)) {
+                return -1;
+            }
+        }
+        return write(blockProbe, block, key, true) ? blockProbe : -1;
+    }
+
+    /**
+     * Adds a batch of keys that aren't in the generation yet in one pass through the files. Every key is placed in the index first, the way
+     * <code>add</code> would place it, then every block that changed is written in order of position, with neighbouring blocks and their
+     * keys written together up to READ_SIZE at a time. Entries that Robin Hood hashing moves along are read in one sweep before anything is
+     * written. Only empty and deleted blocks are written with linear probing, so a crash part way through never loses an entry that was
+     * already there, while with Robin Hood hashing it can lose entries that were being moved along.
+     *
+     * @param newKeys The keys to add.
+     * @param newBlocks The encoded block of each key, indexed like the keys.
+     * @return True if every block was written. The index is loaded again from the files otherwise, so it matches what was written.
+     */
+    boolean addAll(String[] newKeys, ByteBuffer[] newBlocks) {
+        //What each block will hold. 0 if it is unchanged, the old block moved into it, or -1 - the index of the new key placed in it.
+        int[] origins = new int[NUMBER_OF_BLOCKS];
+        boolean placed = true;
+
+        for (int i = 0; i < newKeys.length && placed; i++) {
+            int home = homeBlock(newKeys[i]);
+            int blockProbe = home;
+            int distance = 0;
+
+            while (placed && inUse(blockProbe) && (PROBING == ProbingScheme.LINEAR || distance(blockProbe) >= distance)) {
+                blockProbe = next(blockProbe);
+                distance++;
+                placed = blockProbe != home;                            //Every block is in use.
+            }
+
+            int free = blockProbe;
+
+            while (placed && inUse(free)) {
+                free = next(free);
+                placed = free != blockProbe;
+            }
+
+            for (int to = free; placed && to != blockProbe; to = previous(to)) {
+                int from = previous(to);
+                origins[to - 1] = origins[from - 1] == 0 ? from : origins[from - 1];
+                setHeader(to, headers[from - 1]);
+                setKey(to, keys[from - 1]);
+            }
+
+            if (placed) {
+                origins[blockProbe - 1] = -1 - i;
+                setHeader(blockProbe, newBlocks[i].getInt(0));
+                setKey(blockProbe, newKeys[i]);
+                numOfEntries++;
+            }
+        }
+
+        if (!placed || !writeAll(origins, newBlocks)) {
+            load();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes an entry. Linear probing marks its block deleted. Robin Hood hashing moves the entries after it back one block until an
+     * empty block or one already at its own block, then empties the last block moved from, so no deleted markers are left behind.
+     *
+     * @param blockNum The block holding the entry.
+     * @param key The key that will be removed. Only used in case data must be restored.
+     * @return True if the entry was removed.
+     */
+    boolean remove(int blockNum, String key) {
+        if (PROBING == ProbingScheme.LINEAR) {
+            return delete(blockNum, key);
+        }
+
+        int blockProbe = blockNum;
+
+        for (int after = next(blockNum); after != blockNum && inUse(after) && distance(after) > 0; after = next(after)) {
+            if (!copy(after, blockProbe)) {
+                return false;
+            }
+            blockProbe = after;
+        }
+
+        if (SAVE.writeInt(0, blockPosition(blockProbe)) && KEY_SAVE.writeUTF("", keyPosition(blockProbe)) != -1) {
+            numOfEntries--;
+            setKey(blockProbe, null);
+            setHeader(blockProbe, 0);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes a deleted marker by moving entries after it back towards the blocks they hash to, the way Knuth's deletion algorithm for linear
+     * probing does. Every entry from the marker to the next empty block whose probe passes the hole is moved into it, which leaves a new hole
+     * where it was, and the last hole is emptied. Each entry is written to its new block before its old block is reused, so a crash part way
+     * through can leave an entry in two blocks but never loses one. This only works when there is an empty block after the marker, since
+     * otherwise the probes that wrap round the table would pass the last hole.
+     *
+     * @param blockNum The block to compact from. Nothing is done unless it is marked deleted and an empty block follows it.
+     * @return The number of blocks written. -1 if a write failed, which leaves every entry findable.
+     */
+    int vacuum(int blockNum) {
+        int end = next(blockNum);
+
+        while (headers[end - 1] != 0 && end != blockNum) {
+            end = next(end);
+        }
+
+        if (headers[blockNum - 1] != DELETED || end == blockNum) {
+            return 0;
+        }
+
+        int hole = blockNum;
+        int written = 0;
+
+        for (int blockProbe = next(blockNum); blockProbe != end; blockProbe = next(blockProbe)) {
+            if (inUse(blockProbe) && !isBetween(headers[blockProbe - 1], hole, blockProbe)) {
+                if (!copy(blockProbe, hole)) {
+                    return -1;
+                }
+                hole = blockProbe;
+                written++;
+            }
+        }
+
+        if (!SAVE.writeInt(0, blockPosition(hole)) || KEY_SAVE.writeUTF("", keyPosition(hole)) == -1) {
+            return -1;
+        }
+        setKey(hole, null);
+        setHeader(hole, 0);
+        return written + 1;
+    }
+
+    /**
+     * Checks if a block holds an entry.
+     *
+     * @param blockNum The block to check.
+     * @return True if it is neither empty nor deleted.
+     */
+    boolean inUse(int blockNum) {
+        return headers[blockNum - 1] != 0 && headers[blockNum - 1] != DELETED;
+    }
+
+    /**
+     * Gets the key of a block from the index.
+     *
+     * @param blockNum The block.
+     * @return The key. Null if the block isn't in use.
+     */
+    String getKey(int blockNum) {
+        return keys[blockNum - 1];
+    }
+
+    /**
+     * Reads the key stored in a block from the table file.
+     *
+     * @param blockNum The block to read from.
+     * @return The stored key. Null if the block isn't in use or could not be read.
+     */
+    String readKey(int blockNum) {
+        if (!inUse(blockNum)) {
+            return null;
+        }
+
+        if (!LAYOUT.isCompressed()) {
+            return SAVE.readUTF(blockPosition(blockNum) + LAYOUT.HEADER_SIZE);
+        }
+
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+
+        try {
+            if (!SAVE.readBytes(block, blockPosition(blockNum))) {
+                return null;
+            }
+            return LAYOUT.decodeKey(block);
+        } catch (IOException e) {
+            System.out.println("StorageHashTable getKey: " + e);
+        }
+        return null;
+    }
+
+    /**
+     * Reads a whole block.
+     *
+     * @param blockNum The block to read.
+     * @return The block. Null if it is empty or could not be read.
+     */
+    ByteBuffer read(int blockNum) {
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+
+        if (!SAVE.readBytes(block, blockPosition(blockNum)) || block.getInt(0) == 0) {
+            return null;
+        }
+        return block;
+    }
+
+    /**
+     * Reads several blocks in one sweep through the file. Blocks that are close together are read in one piece along with whatever lies
+     * between them, up to READ_SIZE at a time, so a batch of lookups costs a few sequential reads instead of one random read each.
+     *
+     * @param blockNums The blocks to read, in ascending order.
+     * @return The blocks, in the same order. Null for blocks that are empty or could not be read.
+     */
+    ByteBuffer[] read(int[] blockNums) {
+        ByteBuffer[] blocks = new ByteBuffer[blockNums.length];
+        int first = 0;
+
+        while (first < blockNums.length) {
+            long start = blockPosition(blockNums[first]);
+            int last = first;
+
+            while (last + 1 < blockNums.length && blockPosition(blockNums[last + 1]) - blockPosition(blockNums[last] + 1) <= READ_GAP
+                    && blockPosition(blockNums[last + 1] + 1) - start <= READ_SIZE) {
+                last++;
+            }
+
+            ByteBuffer run = ByteBuffer.allocate((int) (blockPosition(blockNums[last] + 1) - start));
+
+            if (SAVE.readBytes(run, start)) {
+                for (int i = first; i <= last; i++) {
+                    ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+                    System.arraycopy(run.array(), (int) (blockPosition(blockNums[i]) - start), block.array(), 0, BLOCK_SIZE);
+                    blocks[i] = block.getInt(0) == 0 ? null : block;
+                }
+            }
+            first = last + 1;
+        }
+        return blocks;
+    }
+
+    /**
+     * Writes a whole block, and its key if it is new to the block.
+     *
+     * @param blockNum The block to write.
+     * @param block The encoded block. Its header becomes the block's header in the index.
+     * @param key The key stored in the block.
+     * @param newKey Set to true if the block didn't hold this key before.
+     * @return True if the block was written.
+     */
+    boolean write(int blockNum, ByteBuffer block, String key, boolean newKey) {
+        if (!SAVE.writeBytes(block, blockPosition(blockNum))) {
+            return false;
+        }
+        setHeader(blockNum, block.getInt(0));
+
+        if (newKey) {
+            numOfEntries++;
+            setKey(blockNum, key);
+
+            KEY_SAVE.writeUTF(key, keyPosition(blockNum));
+        }
+        return true;
+    }
+
+    /**
+     * Marks a block as deleted. This does not actually remove the stored data.
+     *
+     * @param blockNum The block to mark as deleted.
+     * @param key The key that will be deleted. Only used in case data must be restored.
+     * @return True only if the block was deleted. Attempts to restore it if unsuccessful.
+     */
+    boolean delete(int blockNum, String key) {
+        int header = headers[blockNum - 1];
+
+        if (SAVE.writeInt(DELETED, blockPosition(blockNum)) && KEY_SAVE.writeUTF("", keyPosition(blockNum)) != -1) {
+            numOfEntries--;
+            setKey(blockNum, null);
+            setHeader(blockNum, DELETED);
+            return true;
+        }
+
+        SAVE.writeInt(header, blockPosition(blockNum));
+        KEY_SAVE.writeUTF(key, keyPosition(blockNum));
+        return false;
+    }
+
+    /**
+     * Clears every block in the table and key files.
+     */
+    void clear() {
+        SAVE.clearFile();
+        KEY_SAVE.clearFile();
+        keys = new String[NUMBER_OF_BLOCKS];
+        headers = new int[NUMBER_OF_BLOCKS];
+        hashes = new int[NUMBER_OF_BLOCKS];
+        numOfEntries = 0;
+        numOfTombstones = 0;
+    }
+
+    /**
+     * Makes every change made so far as durable as the given level asks for.
+     *
+     * @param durability How durable the changes must be when this returns.
+     * @return True if operation successful.
+     */
+    boolean commit(Durability durability) {
+        return SAVE.commit(durability) & KEY_SAVE.commit(durability);
+    }
+
+    /**
+     * Forces all written data in the table and key files to the storage device.
+     *
+     * @return True if operation successful.
+     */
+    boolean force() {
+        return SAVE.force() & KEY_SAVE.force();
+    }
+
+    /**
+     * Copies the table and key files, replacing any files already there.
+     *
+     * @param tablePath Where to copy the table file.
+     * @param keyPath Where to copy the key file.
+     * @return True if both files were copied.
+     */
+    boolean copyTo(String tablePath, String keyPath) {
+        return SAVE.copyTo(tablePath) && KEY_SAVE.copyTo(keyPath);
+    }
+
+    /**
+     * Makes the table and key files at least as long as another generation's, so moving them over its files replaces every segment.
+     *
+     * @param other The generation whose files these will replace.
+     * @return True if both files are long enough.
+     */
+    boolean cover(BlockFile other) {
+        long length = other.SAVE.getFileLength();
+        long keyLength = other.KEY_SAVE.getFileLength();
+
+        return (SAVE.getFileLength() >= length || SAVE.setLength(length))
+                && (KEY_SAVE.getFileLength() >= keyLength || KEY_SAVE.setLength(keyLength));
+    }
+
+    /**
+     * Closes and deletes the table and key files. Files kept in memory are only closed.
+     *
+     * @throws IOException if a file could not be deleted.
+     */
+    void deleteFiles() throws IOException {
+        close();
+
+        if (!SAVE.isInMemory()) {
+            SegmentedFile.deleteSegments(new File(SAVE.getFilePath()), 0);
+            SegmentedFile.deleteSegments(new File(KEY_SAVE.getFilePath()), 0);
+        }
+    }
+
+    /**
+     * Closes the table and key files.
+     */
+    @Override
+    public void close() {
+        SAVE.close();
+        KEY_SAVE.close();
+    }
+
+    /**
+     * @return the keys in an array indexed by block number - 1. Null for blocks that aren't in use.
+     */
+    String[] getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return the header of every block, indexed like the keys. 0 for empty blocks.
+     */
+    int[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    int size() {
+        return numOfEntries;
+    }
+
+    /**
+     * @return the number of blocks marked deleted.
+     */
+    int tombstones() {
+        return numOfTombstones;
+    }
+
+    /**
+     * @return the table file.
+     */
+    DataSaver getTableFile() {
+        return SAVE;
+    }
+
+    /**
+     * Loads all keys from the key file. Only the part of the key file that has been written can hold keys, so it is read in large pieces and
+     * the rest is skipped, which keeps opening a new or mostly empty table fast however many blocks it has.
+     */
+    private void loadKeys() {
+        String error = "StorageHashTable loadKeys: ";
+
+        long written = Math.min(KEY_SAVE.getFileLength(), keyPosition(NUMBER_OF_BLOCKS + 1));
+        int keysPerRead = Math.max(1, READ_SIZE / KEY_SIZE);
+        ByteBuffer slots = ByteBuffer.allocate(keysPerRead * KEY_SIZE);
+
+        for (int blockNum = 1; blockNum <= NUMBER_OF_BLOCKS && keyPosition(blockNum) < written; blockNum += keysPerRead) {
+            int count = Math.min(keysPerRead, NUMBER_OF_BLOCKS - blockNum + 1);
+            int length = (int) Math.min((long) count * KEY_SIZE, written - keyPosition(blockNum));
+
+            //The last key may have been written without the rest of its slot, so anything past the end of the file is zeros.
+            Arrays.fill(slots.array(), 0, count * KEY_SIZE, (byte) 0);
+            slots.clear().limit(length);
+
+            if (!KEY_SAVE.readBytes(slots, keyPosition(blockNum))) {
+                System.out.println(error + "Keys from block " + blockNum + " on could not be read.");
+                return;
+            }
+            slots.clear();
+
+            for (int i = 0; i < count; i++) {
+                if (slots.getShort(i * KEY_SIZE) == 0) {
+                    continue;                                           //Empty or deleted.
+                }
+
+                try {
+                    keys[blockNum - 1 + i] = RecordCodec.decode(slots, i * KEY_SIZE);
+                    numOfEntries++;
+                } catch (IOException e) {
+                    System.out.println(error + "Key of block " + (blockNum + i) + " is damaged. " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the header of every block from the table file, and the full hash of its key if the blocks store it, reading the part of the file
+     * that has been written in large pieces.
+     */
+    private void loadHeaders() {
+        String error = "StorageHashTable loadHeaders: ";
+        long written = Math.min(SAVE.getFileLength(), blockPosition(NUMBER_OF_BLOCKS + 1));
+        int blocksPerRead = Math.max(1, READ_SIZE / BLOCK_SIZE);
+        ByteBuffer blocks = ByteBuffer.allocate(blocksPerRead * BLOCK_SIZE);
+
+        for (int blockNum = 1; blockNum <= NUMBER_OF_BLOCKS && blockPosition(blockNum) < written; blockNum += blocksPerRead) {
+            int count = Math.min(blocksPerRead, NUMBER_OF_BLOCKS - blockNum + 1);
+            int length = (int) Math.min((long) count * BLOCK_SIZE, written - blockPosition(blockNum));
+
+            Arrays.fill(blocks.array(), 0, count * BLOCK_SIZE, (byte) 0);
+            blocks.clear().limit(length);
+
+            if (!SAVE.readBytes(blocks, blockPosition(blockNum))) {
+                System.out.println(error + "Blocks from " + blockNum + " on could not be read.");
+                return;
+            }
+            blocks.clear();
+
+            for (int i = 0; i < count; i++) {
+                headers[blockNum - 1 + i] = blocks.getInt(i * BLOCK_SIZE);
+                hashes[blockNum - 1 + i] = LAYOUT.decodeHash(blocks, i * BLOCK_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Makes the keys agree with the headers after both were loaded from the files. A block whose key file slot is empty, or holds a key
+     * whose hash doesn't match the one stored in the block, which a crash between the two writes can leave behind, takes its key from the
+     * block itself.
+     */
+    private void reconcile() {
+        for (int blockNum = 1; blockNum <= NUMBER_OF_BLOCKS; blockNum++) {
+            String key = keys[blockNum - 1];
+
+            if (headers[blockNum - 1] == DELETED) {
+                numOfTombstones++;
+            }
+
+            if (inUse(blockNum)) {
+                if (key != null && LAYOUT.hasFullHash() && key.hashCode() != hashes[blockNum - 1]) {
+                    key = null;
+                    numOfEntries--;
+                }
+                if (key == null) {
+                    key = readKey(blockNum);
+
+                    if (key != null) {
+                        numOfEntries++;
+                    }
+                }
+                setKey(blockNum, key);
+            } else {
+                if (key != null) {
+                    numOfEntries--;
+                }
+                setKey(blockNum, null);
+            }
+        }
+    }
+
+    /**
+     * Copies a block and its key to another block, leaving the first block as it is.
+     *
+     * @param from The block to copy.
+     * @param to The block to copy it to.
+     * @return True if both were written.
+     */
+    private boolean copy(int from, int to) {
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+
+        if (!SAVE.readBytes(block, blockPosition(from))) {
+            return false;
+        }
+        block.clear();
+
+        if (!SAVE.writeBytes(block, blockPosition(to)) || KEY_SAVE.writeUTF(keys[from - 1], keyPosition(to)) == -1) {
+            return false;
+        }
+        setHeader(to, headers[from - 1]);
+        setKey(to, keys[from - 1]);
+        return true;
+    }
+
+    /**
+     * Writes the blocks a batch add changed, and their keys, in order of position. The old blocks being moved are read before anything is
+     * written.
+     *
+     * @param origins What each block now holds. 0 if it is unchanged, the old block moved into it, or -1 - the index of a new block.
+     * @param newBlocks The encoded new blocks.
+     * @return True if every block and key was written.
+     */
+    private boolean writeAll(int[] origins, ByteBuffer[] newBlocks) {
+        int[] moved = Arrays.stream(origins).filter(origin -> origin > 0).sorted().toArray();
+        ByteBuffer[] movedBlocks = read(moved);
+        int blocksPerWrite = Math.max(1, READ_SIZE / BLOCK_SIZE);
+        int blockNum = 1;
+
+        for (ByteBuffer block : movedBlocks) {
+            if (block == null) {
+                return false;
+            }
+        }
+
+        try {
+            while (blockNum <= NUMBER_OF_BLOCKS) {
+                if (origins[blockNum - 1] == 0) {
+                    blockNum++;
+                    continue;
+                }
+
+                int first = blockNum;
+
+                while (blockNum <= NUMBER_OF_BLOCKS && origins[blockNum - 1] != 0 && blockNum - first < blocksPerWrite) {
+                    blockNum++;
+                }
+
+                ByteBuffer run = ByteBuffer.allocate((blockNum - first) * BLOCK_SIZE);
+                ByteBuffer keyRun = ByteBuffer.allocate((blockNum - first) * KEY_SIZE);
+
+                for (int i = first; i < blockNum; i++) {
+                    int origin = origins[i - 1];
+                    ByteBuffer block = origin < 0 ? newBlocks[-1 - origin] : movedBlocks[Arrays.binarySearch(moved, origin)];
+
+                    System.arraycopy(block.array(), block.arrayOffset(), run.array(), (i - first) * BLOCK_SIZE, BLOCK_SIZE);
+                    RecordCodec.encode(keys[i - 1], keyRun, (i - first) * KEY_SIZE);
+                }
+
+                if (!SAVE.writeBytes(run, blockPosition(first)) || !KEY_SAVE.writeBytes(keyRun, keyPosition(first))) {
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("BlockFile writeAll: " + e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Changes a block's key in the index, along with its full hash.
+     *
+     * @param blockNum The block.
+     * @param key The new key. Null if the block isn't in use.
+     */
+    private void setKey(int blockNum, String key) {
+        keys[blockNum - 1] = key;
+        hashes[blockNum - 1] = key == null ? 0 : key.hashCode();
+    }
+
+    /**
+     * Changes a block's header in the index, keeping count of the blocks marked deleted.
+     *
+     * @param blockNum The block.
+     * @param header The new header.
+     */
+    private void setHeader(int blockNum, int header) {
+        if (headers[blockNum - 1] == DELETED) {
+            numOfTombstones--;
+        }
+        if (header == DELETED) {
+            numOfTombstones++;
+        }
+        headers[blockNum - 1] = header;
+    }
+
+    /**
+     * Checks if a block comes after one block and no later than another, going forward through the blocks and wrapping at the end.
+     *
+     * @param blockNum The block to check.
+     * @param after The block it must come after.
+     * @param last The last block it may be.
+     * @return True if it is between them.
+     */
+    private boolean isBetween(int blockNum, int after, int last) {
+        return after < last ? after < blockNum && blockNum <= last : after < blockNum || blockNum <= last;
+    }
+
+    /**
+     * Gets how far the entry in a block is from the block it hashes to.
+     *
+     * @param blockNum A block in use.
+     * @return The number of blocks probed past its own to reach it.
+     */
+    private int distance(int blockNum) {
+        int home = headers[blockNum - 1];
+        return blockNum >= home ? blockNum - home : blockNum + NUMBER_OF_BLOCKS - home;
+    }
+
+    /**
+     * @param blockNum A block number.
+     * @return the block after it, wrapping to the first block after the last.
+     */
+    private int next(int blockNum) {
+        return blockNum == NUMBER_OF_BLOCKS ? 1 : blockNum + 1;
+    }
+
+    /**
+     * @param blockNum A block number.
+     * @return the block before it, wrapping to the last block before the first.
+     */
+    private int previous(int blockNum) {
+        return blockNum == 1 ? NUMBER_OF_BLOCKS : blockNum - 1;
+    }
+
+    /**
+     * Gets where a block starts in the table file.
+     *
+     * @param blockNum The block number.
+     * @return The position of the block. 64 bit so tables larger than 2 GB don't overflow.
+     */
+    private long blockPosition(int blockNum) {
+        return (long) (blockNum - 1) * BLOCK_SIZE;
+    }
+
+    /**
+     * Gets where a block's key is stored in the key file.
+     *
+     * @param blockNum The block number.
+     * @return The position of the key.
+     */
+    private long keyPosition(int blockNum) {
+        return (long) blockNum * KEY_SIZE;
+    }
+}
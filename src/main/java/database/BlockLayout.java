@@ -0,0 +1,396 @@
+package database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Where each part of a StorageHashTable block is stored. A block starts with a four byte state, which is 0 for an empty block, DELETED for a
+ * deleted block and the block the key hashes to otherwise. Checksummed blocks follow the state with a CRC32C of everything after it, so marking
+ * a block deleted or restoring it never invalidates the checksum. Blocks with the FULL_HASH flag then store the key's full 32 bit hash, so a
+ * probe can tell most keys apart without decoding the stored key. In an uncompressed block the key and each record come next, each in a fixed
+ * size slot. The key and STRING records start with their two byte length, and the other column types are stored as binary fields.
+ * <p>
+ * A compressed block is smaller than the slots it would need. After the header it stores a one byte method, a two byte payload length and
+ * the payload: the key and records packed one after another without their unused slot space, deflated if that makes them smaller. An entry
+ * whose payload doesn't fit in the block can't be stored.
+ *
+ * @author Jiyansh Agarwal
+ */
+final class BlockLayout {
+
+    /**
+     * Flag for blocks that carry a checksum.
+     */
+    final static int CHECKSUM = 1;
+    /**
+     * Flag for compressed blocks.
+     */
+    final static int COMPRESSED = 2;
+    /**
+     * Flag for blocks that store their key's full hash.
+     */
+    final static int FULL_HASH = 4;
+
+    final static private int CHECKSUM_OFFSET = 4;
+    final static private byte PACKED = 0;
+    final static private byte DEFLATED = 1;
+    final static private ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    final public int FLAGS;
+    final public int HEADER_SIZE;
+    final public int KEY_SIZE;
+    final public int BLOCK_SIZE;
+    final public Schema SCHEMA;
+    final private int HASH_OFFSET;                                  //Where the full hash is stored, if the blocks store it.
+    final private int[] RECORD_SIZES;
+    final private int[] OFFSETS;                                    //Where each record's slot starts in an uncompressed block.
+    final private int PACKED_SIZE;                                  //The most bytes the key and records can take up once packed.
+
+    private Deflater deflater;
+    private byte[] packed;
+    private byte[] deflated;
+
+    /**
+     * Works out the layout of a block.
+     *
+     * @param flags The format flags the table is stored with.
+     * @param compressedSize The size of a compressed block in bytes. Only used if the flags include COMPRESSED.
+     * @param keySize The size of the key slot, including the two byte length.
+     * @param schema The columns of the records.
+     */
+    BlockLayout(int flags, int compressedSize, int keySize, Schema schema) {
+        this.FLAGS = flags;
+        this.HASH_OFFSET = hasChecksum() ? CHECKSUM_OFFSET + 4 : CHECKSUM_OFFSET;
+        this.HEADER_SIZE = hasFullHash() ? HASH_OFFSET + 4 : HASH_OFFSET;
+        this.KEY_SIZE = keySize;
+        this.SCHEMA = schema.copy();
+        this.RECORD_SIZES = new int[schema.getColumnCount()];
+        this.OFFSETS = new int[schema.getColumnCount()];
+
+        int recordLength = 0;
+
+        for (int i = 0; i < RECORD_SIZES.length; i++) {
+            RECORD_SIZES[i] = schema.slotSize(i);
+            OFFSETS[i] = HEADER_SIZE + keySize + recordLength;
+            recordLength += RECORD_SIZES[i];
+        }
+
+        this.PACKED_SIZE = keySize + recordLength;
+        this.BLOCK_SIZE = isCompressed() ? compressedSize : HEADER_SIZE + PACKED_SIZE;
+
+        if (isCompressed() && BLOCK_SIZE < HEADER_SIZE + 3 + 2) {
+            throw new IllegalArgumentException("BlockLayout Constructor: Compressed block size " + compressedSize + " is too small!");
+        }
+    }
+
+    /**
+     * Works out the layout of a block from the format a table's options ask for.
+     *
+     * @param options The table's options.
+     * @param keySize The size of the key slot, including the two byte length.
+     * @param schema The columns of the records.
+     * @return The layout.
+     */
+    static BlockLayout forOptions(StorageOptions options, int keySize, Schema schema) {
+        int flags = FULL_HASH | (options.isChecksummed() ? CHECKSUM : 0) | (options.getCompressedBlockSize() > 0 ? COMPRESSED : 0);
+        return new BlockLayout(flags, options.getCompressedBlockSize(), keySize, schema);
+    }
+
+    /**
+     * @return true if blocks carry a checksum.
+     */
+    boolean hasChecksum() {
+        return (FLAGS & CHECKSUM) != 0;
+    }
+
+    /**
+     * @return true if blocks store their key's full hash.
+     */
+    boolean hasFullHash() {
+        return (FLAGS & FULL_HASH) != 0;
+    }
+
+    /**
+     * @return true if blocks are compressed.
+     */
+    boolean isCompressed() {
+        return (FLAGS & COMPRESSED) != 0;
+    }
+
+    /**
+     * @return the size of a compressed block. 0 if blocks aren't compressed.
+     */
+    int getCompressedSize() {
+        return isCompressed() ? BLOCK_SIZE : 0;
+    }
+
+    /**
+     * Checks if another layout stores blocks in exactly the same format.
+     *
+     * @param other The other layout.
+     * @return True if the formats match.
+     */
+    boolean sameFormat(BlockLayout other) {
+        return FLAGS == other.FLAGS && BLOCK_SIZE == other.BLOCK_SIZE && SCHEMA.equals(other.SCHEMA);
+    }
+
+    /**
+     * Builds a whole block in the buffer. Parts of the block not used by the data are left as zeros. Only one thread may build blocks with a
+     * layout at a time, since compression reuses the layout's buffers.
+     *
+     * @param block The buffer to build the block in. Must be a heap buffer of at least BLOCK_SIZE bytes.
+     * @param state The block's state.
+     * @param key The key to store.
+     * @param records The records to store.
+     * @throws IOException if the key or a record can't be stored in its slot, or a compressed entry doesn't fit in the block.
+     */
+    synchronized void encode(ByteBuffer block, int state, String key, String[] records) throws IOException {
+        Arrays.fill(block.array(), block.arrayOffset(), block.arrayOffset() + BLOCK_SIZE, (byte) 0);
+        block.clear().limit(BLOCK_SIZE);
+
+        block.putInt(0, state);
+
+        if (hasFullHash()) {
+            block.putInt(HASH_OFFSET, key.hashCode());
+        }
+
+        if (isCompressed()) {
+            encodeCompressed(block, key, records);
+        } else {
+            putUTF(block, key, HEADER_SIZE, KEY_SIZE);
+
+            for (int i = 0; i < RECORD_SIZES.length; i++) {
+                SCHEMA.encode(i, records[i], block, OFFSETS[i]);
+            }
+        }
+
+        if (hasChecksum()) {
+            block.putInt(CHECKSUM_OFFSET, checksum(block));
+        }
+    }
+
+    /**
+     * Reads the full hash of the key stored in a block.
+     *
+     * @param block The block, or the start of it.
+     * @param offset Where the block starts in the buffer.
+     * @return The hash. 0 if the blocks don't store it.
+     */
+    int decodeHash(ByteBuffer block, int offset) {
+        return hasFullHash() ? block.getInt(offset + HASH_OFFSET) : 0;
+    }
+
+    /**
+     * Decodes the key stored in a block.
+     *
+     * @param block The block.
+     * @return The key.
+     * @throws IOException if the block doesn't hold valid data.
+     */
+    String decodeKey(ByteBuffer block) throws IOException {
+        if (isCompressed()) {
+            return RecordCodec.decode(unpack(block), 0);
+        }
+        return RecordCodec.decode(block, HEADER_SIZE);
+    }
+
+    /**
+     * Decodes every record stored in a block.
+     *
+     * @param block The block.
+     * @return The records.
+     * @throws IOException if the block doesn't hold valid data.
+     */
+    String[] decodeRecords(ByteBuffer block) throws IOException {
+        String[] records = new String[RECORD_SIZES.length];
+
+        if (isCompressed()) {
+            ByteBuffer data = unpack(block);
+            int offset = 2 + Short.toUnsignedInt(data.getShort(0));     //Skips the key.
+
+            for (int i = 0; i < RECORD_SIZES.length; i++) {
+                records[i] = SCHEMA.decode(i, data, offset);
+                offset += SCHEMA.packedLength(i, data, offset);
+            }
+            return records;
+        }
+
+        for (int i = 0; i < RECORD_SIZES.length; i++) {
+            records[i] = SCHEMA.decode(i, block, OFFSETS[i]);
+        }
+        return records;
+    }
+
+    /**
+     * Decodes one record stored in a block as text.
+     *
+     * @param block The block.
+     * @param column The record's column.
+     * @return The record.
+     * @throws IOException if the block doesn't hold valid data.
+     */
+    String decodeRecord(ByteBuffer block, int column) throws IOException {
+        if (isCompressed()) {
+            ByteBuffer data = unpack(block);
+            return SCHEMA.decode(column, data, packedOffset(data, column));
+        }
+        return SCHEMA.decode(column, block, OFFSETS[column]);
+    }
+
+    /**
+     * Reads one record stored in a block as a number, straight from its binary field unless it is a STRING.
+     *
+     * @param block The block.
+     * @param column The record's column.
+     * @return The number. A BOOLEAN is 1 or 0.
+     * @throws IOException if the block doesn't hold valid data or a STRING record isn't a number.
+     */
+    int decodeInt(ByteBuffer block, int column) throws IOException {
+        if (isCompressed()) {
+            ByteBuffer data = unpack(block);
+            return SCHEMA.decodeInt(column, data, packedOffset(data, column));
+        }
+        return SCHEMA.decodeInt(column, block, OFFSETS[column]);
+    }
+
+    /**
+     * Checks a block against its stored checksum. Blocks without checksums always pass.
+     *
+     * @param block The block.
+     * @return True if the block is intact.
+     */
+    boolean checksumMatches(ByteBuffer block) {
+        return !hasChecksum() || block.getInt(CHECKSUM_OFFSET) == checksum(block);
+    }
+
+    /**
+     * Packs the key and records one after another and stores them in the block, deflated if that is smaller.
+     *
+     * @param block The block to write into.
+     * @param key The key to store.
+     * @param records The records to store.
+     * @throws IOException if the key or a record doesn't fit in its slot, or the packed entry doesn't fit in the block.
+     */
+    private void encodeCompressed(ByteBuffer block, String key, String[] records) throws IOException {
+        if (packed == null) {
+            packed = new byte[PACKED_SIZE];
+            deflated = new byte[BLOCK_SIZE];
+            deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+
+        ByteBuffer data = ByteBuffer.wrap(packed);
+        int length = putUTF(data, key, 0, KEY_SIZE);
+
+        for (int i = 0; i < RECORD_SIZES.length; i++) {
+            length += SCHEMA.encode(i, records[i], data, length);
+        }
+
+        int room = Math.min(BLOCK_SIZE - HEADER_SIZE - 3, 65535);
+
+        deflater.reset();
+        deflater.setInput(packed, 0, length);
+        deflater.finish();
+        int deflatedLength = deflater.deflate(deflated, 0, deflated.length);
+
+        if (deflater.finished() && deflatedLength < length && deflatedLength <= room) {
+            block.put(HEADER_SIZE, DEFLATED);
+            block.putShort(HEADER_SIZE + 1, (short) deflatedLength);
+            System.arraycopy(deflated, 0, block.array(), block.arrayOffset() + HEADER_SIZE + 3, deflatedLength);
+        } else if (length <= room) {
+            block.put(HEADER_SIZE, PACKED);
+            block.putShort(HEADER_SIZE + 1, (short) length);
+            System.arraycopy(packed, 0, block.array(), block.arrayOffset() + HEADER_SIZE + 3, length);
+        } else {
+            throw new IOException("Entry \"" + key + "\" doesn't fit in a compressed block of " + BLOCK_SIZE + " bytes!");
+        }
+    }
+
+    /**
+     * Gets the packed key and records stored in a compressed block, inflating them if needed.
+     *
+     * @param block The block.
+     * @return The packed data, starting at position 0.
+     * @throws IOException if the payload is damaged.
+     */
+    private ByteBuffer unpack(ByteBuffer block) throws IOException {
+        byte method = block.get(HEADER_SIZE);
+        int length = Short.toUnsignedInt(block.getShort(HEADER_SIZE + 1));
+
+        if (HEADER_SIZE + 3 + length > BLOCK_SIZE) {
+            throw new IOException("Compressed payload runs past the end of the block!");
+        }
+
+        if (method == PACKED) {
+            return block.slice(HEADER_SIZE + 3, length);
+        } else if (method != DEFLATED) {
+            throw new IOException("Unknown compression method " + method + "!");
+        }
+
+        Inflater inflater = INFLATER.get();
+        byte[] data = new byte[PACKED_SIZE];
+
+        inflater.reset();
+        inflater.setInput(block.array(), block.arrayOffset() + HEADER_SIZE + 3, length);
+
+        try {
+            int inflatedLength = inflater.inflate(data);
+
+            if (!inflater.finished()) {
+                throw new IOException("Compressed payload is damaged!");
+            }
+            return ByteBuffer.wrap(data, 0, inflatedLength);
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed payload is damaged! " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finds where a record starts in the packed data of a compressed block.
+     *
+     * @param data The packed data.
+     * @param column The record's column.
+     * @return The position of the record.
+     */
+    private int packedOffset(ByteBuffer data, int column) {
+        int offset = 2 + Short.toUnsignedInt(data.getShort(0));         //Skips the key.
+
+        for (int i = 0; i < column; i++) {
+            offset += SCHEMA.packedLength(i, data, offset);
+        }
+        return offset;
+    }
+
+    /**
+     * Works out the checksum of everything in a block after the checksum field.
+     *
+     * @param block The block.
+     * @return The checksum.
+     */
+    private int checksum(ByteBuffer block) {
+        CRC32C crc = new CRC32C();
+        crc.update(block.array(), block.arrayOffset() + CHECKSUM_OFFSET + 4, BLOCK_SIZE - CHECKSUM_OFFSET - 4);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Encodes a key into its slot.
+     *
+     * @param block The block to write into.
+     * @param text The text to encode.
+     * @param offset Where the text's slot starts in the block.
+     * @param slotSize The size of the slot, including the two byte length.
+     * @return The number of bytes written, including the two byte length.
+     * @throws IOException if the encoded text doesn't fit in the slot.
+     */
+    private static int putUTF(ByteBuffer block, String text, int offset, int slotSize) throws IOException {
+        if (RecordCodec.slotLength(text) > slotSize) {
+            throw new IOException("\"" + text + "\" is too long for its slot!");
+        }
+        return RecordCodec.encode(text, block, offset);
+    }
+}
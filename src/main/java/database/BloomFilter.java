@@ -0,0 +1,208 @@
+package database;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * A Bloom filter of the keys in a StorageHashTable, so a lookup for a key that was never added returns without probing. Each key sets a few
+ * bits chosen by double hashing its String hash code and a second FNV-1a hash of its characters. A key whose bits aren't all set is
+ * definitely not in the table. Keys are never removed, so deleted keys still pass until the filter is rebuilt from the table's keys.
+ * <p>
+ * The filter is saved with the table's snapshot and is only trusted if it was written for the snapshot the table started from, since a filter
+ * missing a key would hide it. The file holds a magic number, a version, a CRC32C of everything after the first 12 bytes, the checksum of the
+ * snapshot it was written for, the number of bits and hashes, the number of keys added and the bits.
+ *
+ * @author Jiyansh Agarwal
+ */
+class BloomFilter implements AutoCloseable {
+
+    final static private int MAGIC = 0x53484246;                    //"SHBF"
+    final static private int VERSION = 1;
+    final static private int HEADER_SIZE = 28;
+    final static private int MIN_BITS = 64;
+
+    final private DataSaver SAVE;                                   //Null for a table kept in memory.
+    final private double FALSE_POSITIVE_RATE;
+    private long[] bits = new long[1];
+    private int numOfBits = MIN_BITS;
+    private int numOfHashes = 1;
+    private int numOfKeys = 0;
+
+    /**
+     * Makes an empty filter, opening the file it is saved in if there is one.
+     *
+     * @param path Path of the filter file. Null if the filter is never saved.
+     * @param falsePositiveRate The share of absent keys the filter may let through once it holds as many keys as it was sized for.
+     */
+    BloomFilter(String path, double falsePositiveRate) {
+        SAVE = path == null ? null : new DataSaver(path, 0, new StorageOptions());
+        FALSE_POSITIVE_RATE = falsePositiveRate;
+    }
+
+    /**
+     * Empties the filter and sizes it for a number of keys.
+     *
+     * @param expectedKeys The number of keys the filter should hold at its false positive rate.
+     */
+    void reset(int expectedKeys) {
+        int keys = Math.max(1, expectedKeys);
+        double size = Math.ceil(-keys * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+
+        numOfBits = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(MIN_BITS, size));
+        numOfHashes = (int) Math.max(1, Math.round((double) numOfBits / keys * Math.log(2)));
+        bits = new long[(numOfBits + 63) / 64];
+        numOfKeys = 0;
+    }
+
+    /**
+     * Adds a key.
+     *
+     * @param key The key.
+     */
+    void add(String key) {
+        int hash = key.hashCode();
+        int step = secondHash(key);
+
+        for (int i = 0; i < numOfHashes; i++) {
+            int bit = bit(hash, step, i);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        numOfKeys++;
+    }
+
+    /**
+     * Checks if a key might have been added.
+     *
+     * @param key The key.
+     * @return False if the key was definitely never added.
+     */
+    boolean mightContain(String key) {
+        int hash = key.hashCode();
+        int step = secondHash(key);
+
+        for (int i = 0; i < numOfHashes; i++) {
+            int bit = bit(hash, step, i);
+
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of keys added since the filter was last emptied, including keys that have since been deleted.
+     */
+    int size() {
+        return numOfKeys;
+    }
+
+    /**
+     * Loads the filter from its file if it was saved for the given snapshot and is sized for the given number of keys.
+     *
+     * @param expectedKeys The number of keys the filter should be sized for.
+     * @param snapshotChecksum The checksum of the snapshot the table started from.
+     * @return True if the saved filter was loaded. The filter is left as it was otherwise.
+     */
+    boolean load(int expectedKeys, int snapshotChecksum) {
+        if (SAVE == null || SAVE.getFileLength() < HEADER_SIZE || SAVE.getFileLength() > Integer.MAX_VALUE) {
+            return false;
+        }
+
+        ByteBuffer saved = ByteBuffer.allocate((int) SAVE.getFileLength());
+
+        if (!SAVE.readBytes(saved, 0) || saved.getInt(0) != MAGIC || saved.getInt(4) != VERSION || saved.getInt(8) != checksum(saved)
+                || saved.getInt(12) != snapshotChecksum) {
+            return false;
+        }
+
+        long[] savedBits = bits;
+        int savedNumOfBits = numOfBits;
+        int savedNumOfHashes = numOfHashes;
+        reset(expectedKeys);
+
+        if (saved.getInt(16) != numOfBits || saved.getInt(20) != numOfHashes || saved.limit() != HEADER_SIZE + bits.length * 8L) {
+            bits = savedBits;
+            numOfBits = savedNumOfBits;
+            numOfHashes = savedNumOfHashes;
+            return false;
+        }
+
+        numOfKeys = saved.getInt(24);
+        saved.position(HEADER_SIZE);
+        saved.asLongBuffer().get(bits);
+        return true;
+    }
+
+    /**
+     * Saves the filter and forces it to the storage device.
+     *
+     * @param snapshotChecksum The checksum of the snapshot the filter is saved with.
+     * @return True if operation successful. False if the filter is never saved.
+     */
+    boolean write(int snapshotChecksum) {
+        if (SAVE == null) {
+            return false;
+        }
+
+        ByteBuffer saved = ByteBuffer.allocate(HEADER_SIZE + bits.length * 8);
+
+        saved.putInt(0, MAGIC).putInt(4, VERSION).putInt(12, snapshotChecksum).putInt(16, numOfBits).putInt(20, numOfHashes)
+                .putInt(24, numOfKeys);
+        saved.position(HEADER_SIZE);
+        saved.asLongBuffer().put(bits);
+        saved.clear();
+        saved.putInt(8, checksum(saved));
+
+        return SAVE.setLength(saved.capacity()) && SAVE.writeBytes(saved, 0) && SAVE.force();
+    }
+
+    /**
+     * Closes the filter file.
+     */
+    @Override
+    public void close() {
+        if (SAVE != null) {
+            SAVE.close();
+        }
+    }
+
+    /**
+     * Picks one of the bits a key sets.
+     *
+     * @param hash The key's hash code.
+     * @param step The key's second hash.
+     * @param i Which of the key's bits.
+     * @return The bit number.
+     */
+    private int bit(int hash, int step, int i) {
+        return (int) Math.floorMod(hash + (long) i * step, (long) numOfBits);
+    }
+
+    /**
+     * Works out a second hash of a key that doesn't depend on its hash code, so keys with the same hash code can still set different bits.
+     *
+     * @param key The key.
+     * @return The 32 bit FNV-1a hash of its characters.
+     */
+    private static int secondHash(String key) {
+        int hash = 0x811C9DC5;
+
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    /**
+     * Works out the checksum of everything after the first 12 bytes of a saved filter.
+     *
+     * @param saved The saved filter.
+     * @return The checksum.
+     */
+    private static int checksum(ByteBuffer saved) {
+        CRC32C crc = new CRC32C();
+        crc.update(saved.array(), saved.arrayOffset() + 12, saved.limit() - 12);
+        return (int) crc.getValue();
+    }
+}
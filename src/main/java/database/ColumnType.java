@@ -0,0 +1,27 @@
+package database;
+
+/**
+ * The type of a column in a StorageHashTable schema. Numbers and flags are stored as fixed width binary fields, so they are read without
+ * decoding or parsing text.
+ *
+ * @author Jiyansh Agarwal
+ */
+public enum ColumnType {
+
+    /**
+     * A 32 bit signed integer stored in 4 bytes.
+     */
+    INT,
+    /**
+     * A 16 bit signed integer stored in 2 bytes.
+     */
+    SHORT,
+    /**
+     * A flag stored in 1 byte. Written as "1" or "true" for true and "0", "false" or "" for false, and read back as "1" or "0".
+     */
+    BOOLEAN,
+    /**
+     * Text of up to a fixed number of bytes once encoded, stored with its two byte length.
+     */
+    STRING
+}
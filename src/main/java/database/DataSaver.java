@@ -1,19 +1,49 @@
 package database;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.io.FileNotFoundException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Uses RandomAccessFile to read and write data to file in a modified UTF-8 encoding. Reads only based on this encoding.
+ * Reads and writes data to file in a modified UTF-8 encoding. Reads only based on this encoding. The file is opened once when the DataSaver is
+ * created and every read and write is a positional operation on the same file, so the DataSaver must be closed when it is no longer needed.
+ * Positions are 64 bit, and the file can be split into fixed size segment files. A memory mapped DataSaver reads and writes the mapped
+ * segments directly and only uses the channel for data past the end of a mapping. Otherwise an optional PageCache can keep recently used pages
+ * of the file in memory. Writes are made durable with <code>commit</code>, which lets
+ * concurrent and delayed commits share a single force of the file. A DataSaver can also keep its data only in memory, on or off the Java heap,
+ * in exactly the layout it would have in the file, and save it to a file with <code>copyTo</code>.
  *
  * @author Jiyansh Agarwal
  */
-public class DataSaver {
+public class DataSaver implements AutoCloseable {
 
     final private File path;
     private long length = 0;
+    private long growthChunk = 0;                                   //0 if the file was made its full length when it was created.
+    private volatile long allocated = 0;                            //How far a growing file has been extended so far.
+    private StorageBackend file;
+    private PageCache cache;
+    private IOStats stats = new IOStats();
+    private long asyncFlushDelay = 100;
+    private ScheduledFuture<?> pendingFlush;
+
+    final private AtomicLong writeCount = new AtomicLong();
+    final private Object syncLock = new Object();
+    private long syncedCount = 0;
+
+    private static ScheduledExecutorService flusher;
+    private static ExecutorService ioExecutor;
 
     /**
      * Asks user for file path and name. Creates file if it doesn't already exist.
@@ -45,22 +75,9 @@ public class DataSaver {
         this.path = new File(path + File.separator + fileName);
         this.length = length;
 
-        try {
-            if (!this.path.exists()) {
-                this.path.createNewFile();
-                RandomAccessFile file = new RandomAccessFile(path, "rw");
-                file.setLength(length);
-            }
-
-            //Check if file is writable and readable.        
-            if (!this.path.canRead() || !this.path.canWrite()) {
-                throw new IOException(error + "File can't be written to and/or read from.");
-            }
-        } catch (IOException e) {
-            System.out.println(error + e);
-        }
+        open(true, new StorageOptions());
     }
-    
+
     /**
      * Asks user for file path and name. Creates file if it doesn't already exist.
      *
@@ -89,18 +106,7 @@ public class DataSaver {
 
         this.path = new File(path + File.separator + fileName);
 
-        try {
-            if (!this.path.exists()) {
-                this.path.createNewFile();
-            }
-
-            //Check if file is writable and readable.        
-            if (!this.path.canRead() || !this.path.canWrite()) {
-                throw new IOException(error + "File can't be written to and/or read from.");
-            }
-        } catch (IOException e) {
-            System.out.println(error + e);
-        }
+        open(false, new StorageOptions());
     }
 
     /**
@@ -110,6 +116,17 @@ public class DataSaver {
      * @param length The length to make the file.
      */
     public DataSaver(String path, long length) {
+        this(path, length, new StorageOptions());
+    }
+
+    /**
+     * Asks user for file path with name. Creates file if it doesn't already exist.
+     *
+     * @param path Directory of file from root.
+     * @param length The length to make the file. A file that grows in chunks starts empty and reads as zeros up to this length.
+     * @param options How the file is stored.
+     */
+    public DataSaver(String path, long length, StorageOptions options) {
         String error = "DataSaver Constructor: ";
 
         //-------------------------------[Input Validation]------------------------
@@ -117,6 +134,9 @@ public class DataSaver {
             if (path == null) {
                 throw new NullPointerException(error + "Null directory");
             }
+            if (options == null) {
+                throw new NullPointerException(error + "Null options");
+            }
             if (path.length() == 0 || path.trim().length() == 0) {
                 throw new IOException(error + "Empty file name or directory not allowed!");
             }
@@ -127,23 +147,25 @@ public class DataSaver {
 
         this.path = new File(path);
         this.length = length;
+        this.asyncFlushDelay = options.getAsyncFlushDelay();
+        this.growthChunk = options.getGrowthChunk();
 
-        try {
-            if (!this.path.exists()) {
-                this.path.createNewFile();
-                RandomAccessFile file = new RandomAccessFile(path, "rw");
-                file.setLength(length);
-            }
+        if (options.getStats() != null) {
+            this.stats = options.getStats();
+        }
 
-            //Check if file is writable and readable.
-            if (!this.path.canRead() || !this.path.canWrite()) {
-                throw new IOException(error + "File can't be written to and/or read from.");
+        open(growthChunk == 0, options);
+
+        //Mapped and memory storage are already in memory, so they never get a page cache.
+        if (file != null && !options.isMemoryMapped() && !options.isInMemory() && options.getPageCacheSize() > 0) {
+            try {
+                cache = new PageCache(file, options.getPageSize(), options.getPageCacheSize(), options.isWriteBack());
+            } catch (IOException e) {
+                System.out.println(error + e);
             }
-        } catch (IOException e) {
-            System.out.println(error + e);
         }
     }
-    
+
     /**
      * Asks user for file path with name. Creates file if it doesn't already exist.
      *
@@ -167,18 +189,7 @@ public class DataSaver {
 
         this.path = new File(path);
 
-        try {
-            if (!this.path.exists()) {
-                this.path.createNewFile();
-            }
-
-            //Check if file is writable and readable.
-            if (!this.path.canRead() || !this.path.canWrite()) {
-                throw new IOException(error + "File can't be written to and/or read from.");
-            }
-        } catch (IOException e) {
-            System.out.println(error + e);
-        }
+        open(false, new StorageOptions());
     }
 
     /**
@@ -191,19 +202,13 @@ public class DataSaver {
     public long writeUTF(String text, long position) {
         String error = "DataSaver writeUTF: ";
         try {
-            RandomAccessFile file = new RandomAccessFile(path, "rw");
-            long writtenLength;
-
-            file.seek(position);
-            file.writeUTF(text);
-            writtenLength = file.getFilePointer();
+            ByteBuffer encodedText = RecordCodec.scratch(RecordCodec.slotLength(text));
+            int length = RecordCodec.encode(text, encodedText, 0);
 
-            file.close();
+            writeFully(encodedText, position);
 
-            return writtenLength - position;
+            return length;
 
-        } catch (FileNotFoundException e) {
-            System.out.println(error + e);
         } catch (IOException e) {
             System.out.println(error + e);
         }
@@ -219,17 +224,15 @@ public class DataSaver {
     public String readUTF(long start) {
         String error = "DataSaver readUTF: ";
         try {
-            RandomAccessFile file = new RandomAccessFile(path, "r");
+            ByteBuffer encodedText = RecordCodec.scratch(2);
+            readFully(encodedText, start);
 
-            file.seek(start);
-            String text = file.readUTF();
+            int length = 2 + Short.toUnsignedInt(encodedText.getShort(0));
+            encodedText = RecordCodec.scratch(length).putShort(0, (short) (length - 2));
+            readFully(encodedText.position(2), start + 2);
 
-            file.close();
+            return RecordCodec.decode(encodedText, 0);
 
-            return text;
-
-        } catch (FileNotFoundException e) {
-            System.out.println(error + e);
         } catch (IOException e) {
             System.out.println(error + e);
         }
@@ -243,21 +246,15 @@ public class DataSaver {
      * @param length How many bytes to read.
      * @return The requested data as a String.
      */
-    public String read(int start, int length) {
+    public String read(long start, int length) {
         String error = "DataSaver read: ";
         try {
-            RandomAccessFile file = new RandomAccessFile(path, "r");
             byte[] encodedText = new byte[length];
 
-            file.seek(start);
-            file.readFully(encodedText, 0, length);
-            String text = new String(encodedText, "UTF-8");
-            file.close();
+            readFully(ByteBuffer.wrap(encodedText), start);
 
-            return text;
+            return new String(encodedText, "UTF-8");
 
-        } catch (FileNotFoundException e) {
-            System.out.println(error + e);
         } catch (IOException e) {
             System.out.println(error + e);
         }
@@ -271,25 +268,50 @@ public class DataSaver {
      * @param position The position to write from.
      * @return True only if successfully written.
      */
-    public boolean writeBytes(byte[] text, int position) {
+    public boolean writeBytes(byte[] text, long position) {
         String error = "DataSaver writeBytes: ";
         try {
-            RandomAccessFile file = new RandomAccessFile(path, "rw");
-
-            file.seek(position);
-            file.write(text);
-            file.close();
+            writeFully(ByteBuffer.wrap(text), position);
 
             return true;
 
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             System.out.println(error + e);
+        }
+        return false;
+    }
+
+    /**
+     * Writes all the remaining bytes in the buffer to the specified position in the file as a single write.
+     *
+     * @param data The data to write.
+     * @param position The position to write from.
+     * @return True only if successfully written.
+     */
+    public boolean writeBytes(ByteBuffer data, long position) {
+        String error = "DataSaver writeBytes: ";
+        try {
+            writeFully(data, position);
+
+            return true;
+
         } catch (IOException e) {
             System.out.println(error + e);
         }
         return false;
     }
 
+    /**
+     * Writes all the remaining bytes in the buffer to the file on an I/O thread. The buffer must not be changed until the write completes.
+     *
+     * @param data The data to write.
+     * @param position The position to write from.
+     * @return True once the data has been written. False if it couldn't be written.
+     */
+    public CompletableFuture<Boolean> writeBytesAsync(ByteBuffer data, long position) {
+        return CompletableFuture.supplyAsync(() -> writeBytes(data, position), ioExecutor());
+    }
+
     /**
      * Writes data from a byte to the specified position in the file.
      *
@@ -297,19 +319,13 @@ public class DataSaver {
      * @param position The position to write from.
      * @return True only if successfully written.
      */
-    public boolean writeByte(byte text, int position) {
+    public boolean writeByte(byte text, long position) {
         String error = "DataSaver writeByte: ";
         try {
-            RandomAccessFile file = new RandomAccessFile(path, "rw");
-
-            file.seek(position);
-            file.writeByte(text);
-            file.close();
+            writeFully(ByteBuffer.wrap(new byte[]{text}), position);
 
             return true;
 
-        } catch (FileNotFoundException e) {
-            System.out.println(error + e);
         } catch (IOException e) {
             System.out.println(error + e);
         }
@@ -323,19 +339,13 @@ public class DataSaver {
      * @param position The position to write from.
      * @return True only if successfully written.
      */
-    public boolean writeInt(int num, int position) {
-        String error = "DataSaver writeByte: ";
+    public boolean writeInt(int num, long position) {
+        String error = "DataSaver writeInt: ";
         try {
-            RandomAccessFile file = new RandomAccessFile(path, "rw");
-
-            file.seek(position);
-            file.writeInt(num);
-            file.close();
+            writeFully(ByteBuffer.allocate(4).putInt(0, num), position);
 
             return true;
 
-        } catch (FileNotFoundException e) {
-            System.out.println(error + e);
         } catch (IOException e) {
             System.out.println(error + e);
         }
@@ -349,45 +359,67 @@ public class DataSaver {
      * @param length How many bytes to read.
      * @return The requested data as a byte array.
      */
-    public byte[] readBytes(int start, int length) {
+    public byte[] readBytes(long start, int length) {
         String error = "DataSaver readBytes: ";
         try {
-            RandomAccessFile file = new RandomAccessFile(path, "r");
             byte[] text = new byte[length];
 
-            file.seek(start);
-            file.readFully(text, 0, length);
-            file.close();
+            readFully(ByteBuffer.wrap(text), start);
 
             return text;
 
-        } catch (FileNotFoundException e) {
-            System.out.println(error + e);
         } catch (IOException e) {
             System.out.println(error + e);
         }
         return null;
     }
 
+    /**
+     * Fills the remaining space in the buffer with bytes from the file starting at the start index, as a single read.
+     *
+     * @param buffer The buffer to fill.
+     * @param start Position in file to start reading from.
+     * @return True only if the buffer was filled.
+     */
+    public boolean readBytes(ByteBuffer buffer, long start) {
+        String error = "DataSaver readBytes: ";
+        try {
+            readFully(buffer, start);
+
+            return true;
+
+        } catch (IOException e) {
+            System.out.println(error + e);
+        }
+        return false;
+    }
+
+    /**
+     * Fills the remaining space in the buffer with bytes from the file on an I/O thread. The buffer must not be used until the read completes.
+     *
+     * @param buffer The buffer to fill.
+     * @param start Position in file to start reading from.
+     * @return True once the buffer has been filled. False if it couldn't be filled.
+     */
+    public CompletableFuture<Boolean> readBytesAsync(ByteBuffer buffer, long start) {
+        return CompletableFuture.supplyAsync(() -> readBytes(buffer, start), ioExecutor());
+    }
+
     /**
      * Reads and integer (i.e. 4 bytes) from the file at the start index. NOTE: Will return max integer value if there is an error!
      *
      * @param start Position in file to start reading from.
      * @return The requested data as an integer.
      */
-    public int readInt(int start) {
+    public int readInt(long start) {
         String error = "DataSaver readInt: ";
         try {
-            RandomAccessFile file = new RandomAccessFile(path, "r");
+            ByteBuffer integer = ByteBuffer.allocate(4);
 
-            file.seek(start);
-            int integer = file.readInt();
-            file.close();
+            readFully(integer, start);
 
-            return integer;
+            return integer.getInt(0);
 
-        } catch (FileNotFoundException e) {
-            System.out.println(error + e);
         } catch (IOException e) {
             System.out.println(error + e);
         }
@@ -403,16 +435,12 @@ public class DataSaver {
     public short readDataLength(long start) {
         String error = "DataSaver readDataLength: ";
         try {
-            RandomAccessFile file = new RandomAccessFile(path, "r");
+            ByteBuffer length = ByteBuffer.allocate(2);
 
-            file.seek(start);
-            short length = file.readShort();
+            readFully(length, start);
 
-            file.close();
+            return length.getShort(0);
 
-            return length;
-        } catch (FileNotFoundException e) {
-            System.out.println(error + e);
         } catch (IOException e) {
             System.out.println(error + e);
         }
@@ -428,19 +456,18 @@ public class DataSaver {
     public long getEndPosition(long start) {
         String error = "DataSaver getEndPosition: ";
         try {
-            RandomAccessFile file = new RandomAccessFile(path, "r");
+            ByteBuffer length = ByteBuffer.allocate(2);
 
-            file.seek(start);
-            file.readUTF();
+            readFully(length, start);
 
-            long pos = file.getFilePointer();
+            long pos = start + 2 + Short.toUnsignedInt(length.getShort(0));
 
-            file.close();
+            if (pos > size()) {
+                throw new EOFException();
+            }
 
             return pos;
 
-        } catch (FileNotFoundException e) {
-            System.out.println(error + e);
         } catch (IOException e) {
             System.out.println(error + e);
         }
@@ -455,59 +482,496 @@ public class DataSaver {
     public long getFileLength() {
         String error = "DataSaver getFileLength: ";
         try {
-            return new RandomAccessFile(path, "r").length();
-        } catch (FileNotFoundException e) {
-            System.out.println(error + e);
+            return size();
         } catch (IOException e) {
             System.out.println(error + e);
         }
         return -1;
     }
 
-    /** 
+    /**
      * @return the full path of the file.
      */
     public String getFilePath() {
         return path.getPath();
     }
-    
+
     /**
      * Sets the file length. If new length is less than previous length, data may be truncated.
-     * @param length 
+     * @param length
      * @return true if length is successfully changed.
      */
-    public boolean setLength(long length) {        
+    public boolean setLength(long length) {
         String error = "DataSaver setLength: ";
-        
+
         this.length = length;
-        
+
         try {
-            new RandomAccessFile(path, "rw").setLength(length);
+            file();
+            writeCount.incrementAndGet();
+
+            if (cache != null) {
+                cache.flush();
+            }
+
+            file.setLength(length);
+            allocated = length;
+
+            if (cache != null) {
+                cache.invalidate();
+            }
             return true;
-        } catch (FileNotFoundException e) {
-            System.out.println(error + e);
         } catch (IOException e) {
             System.out.println(error + e);
         }
         return false;
     }
-    
+
     /**
-     * Deletes all the data in the file.
+     * Deletes all the data in the file. A file that grows in chunks is cut back to nothing, so only the part that was written is dropped.
      *
      * @return True if operation successful.
      */
     public boolean clearFile() {
         String error = "DataSaver clearFile: ";
         try {
-            new RandomAccessFile(path, "rw").setLength(0);
-            new RandomAccessFile(path, "rw").setLength(length);
+            file();
+            writeCount.incrementAndGet();
+
+            //A mapped file can't be truncated while it is mapped, so the mapping is zeroed instead.
+            if (file.isMemoryMapped()) {
+                file.zero(0, file.length());
+                return true;
+            }
+
+            //Dirty pages are dropped first rather than written, so a background flush can't write them back over the cleared file.
+            if (cache != null) {
+                cache.discard();
+            }
+
+            file.setLength(0);
+            allocated = 0;
+
+            if (growthChunk == 0) {
+                file.setLength(length);
+                allocated = length;
+            }
+
+            if (cache != null) {
+                cache.invalidate();                                     //Picks up the new length.
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println(error + e);
+        }
+        return false;
+    }
+
+    /**
+     * Copies all the data to a file, replacing the file if it already exists. Used to save data that is kept in memory to disk.
+     *
+     * @param path The file to copy to, including its name. Cannot be the file this DataSaver is using.
+     * @return True if operation successful.
+     */
+    public boolean copyTo(String path) {
+        String error = "DataSaver copyTo: ";
+
+        //-------------------------------[Input Validation]------------------------
+        try {
+            if (path == null) {
+                throw new NullPointerException(error + "Null file path");
+            }
+            if (path.trim().length() == 0) {
+                throw new IOException(error + "Empty file path not allowed!");
+            }
+            if (!isInMemory() && new File(path).getCanonicalFile().equals(this.path.getCanonicalFile())) {
+                throw new IOException(error + "A file cannot be copied onto itself!");
+            }
+        } catch (IOException e) {
+            System.out.println(error + e);
+            return false;
+        }
+        //-------------------------------------------------------------------------
+
+        try (RandomAccessFile target = new RandomAccessFile(path, "rw")) {
+            FileChannel channel = target.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long length = size();
+
+            channel.truncate(0);
+
+            for (long position = 0; position < length; position += buffer.limit()) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), length - position));
+                readFully(buffer, position);
+                buffer.flip();
+
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, position + buffer.position());
+                }
+            }
+            channel.force(false);
             return true;
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             System.out.println(error + e);
+        }
+        return false;
+    }
+
+    /**
+     * Forces all written data to the storage device.
+     *
+     * @return True if operation successful.
+     */
+    public boolean force() {
+        String error = "DataSaver force: ";
+        try {
+            long start = System.nanoTime();
+
+            if (cache != null) {
+                cache.flush();
+            }
+            file().sync();
+            stats.recordSync(System.nanoTime() - start);
+            return true;
         } catch (IOException e) {
             System.out.println(error + e);
         }
         return false;
     }
+
+    /**
+     * Makes the data written so far as durable as the given level asks for. A commit that arrives while another thread is forcing the file
+     * waits for that force and shares it instead of forcing again.
+     *
+     * @param durability How durable the data must be when this returns.
+     * @return True if operation successful. <code>ASYNC</code> and <code>NONE</code> commits always succeed.
+     */
+    public boolean commit(Durability durability) {
+        switch (durability) {
+            case SYNC:
+                return sync();
+            case ASYNC:
+                scheduleFlush();
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return the counters this DataSaver's I/O is counted in.
+     */
+    public IOStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return true if the file is memory mapped.
+     */
+    public boolean isMemoryMapped() {
+        return file != null && file.isMemoryMapped();
+    }
+
+    /**
+     * @return true if the data is only kept in memory.
+     */
+    public boolean isInMemory() {
+        return file instanceof MemoryStorage;
+    }
+
+    /**
+     * @return the storage backend the data is kept in.
+     */
+    public StorageBackend getBackend() {
+        return file;
+    }
+
+    /**
+     * @return the number of segment files the file is split across. 0 if the data is only kept in memory.
+     */
+    public int getSegmentCount() {
+        return file == null ? 0 : file.getSegmentCount();
+    }
+
+    /**
+     * @return the page cache in front of the file. Null if there is no page cache.
+     */
+    public PageCache getPageCache() {
+        return cache;
+    }
+
+    /**
+     * Closes the file, forcing any writes that haven't been forced yet. Any call made after the DataSaver is closed will fail.
+     */
+    @Override
+    public void close() {
+        String error = "DataSaver close: ";
+
+        synchronized (this) {
+            if (pendingFlush != null) {
+                pendingFlush.cancel(false);
+            }
+        }
+
+        synchronized (syncLock) {
+            try {
+                if (file != null && !file.isClosed()) {
+                    if (cache != null) {
+                        cache.flush();
+                    }
+
+                    //The background flush was cancelled above, so writes it would have forced are forced here instead.
+                    long forcedCount = writeCount.get();
+
+                    if (syncedCount < forcedCount) {
+                        long start = System.nanoTime();
+
+                        file.sync();
+                        stats.recordSync(System.nanoTime() - start);
+                        syncedCount = forcedCount;
+                    }
+                    file.close();
+                }
+            } catch (IOException e) {
+                System.out.println(error + e);
+            }
+        }
+    }
+
+    /**
+     * Opens the storage backend for reading and writing, creating the file if it doesn't already exist. Memory storage never touches the file.
+     *
+     * @param preallocate Set to true to extend newly created storage to the length given in the constructor.
+     * @param options Which backend to open and how.
+     */
+    private void open(boolean preallocate, StorageOptions options) {
+        String error = "DataSaver Constructor: ";
+
+        try {
+            boolean created = true;
+
+            if (!options.isInMemory()) {
+                created = !this.path.exists() && this.path.createNewFile();
+
+                //Check if file is writable and readable.
+                if (!this.path.canRead() || !this.path.canWrite()) {
+                    throw new IOException(error + "File can't be written to and/or read from.");
+                }
+            }
+
+            file = StorageBackend.open(this.path, options);
+            stats.recordOpen();
+
+            if (created && preallocate) {
+                file.setLength(length);
+            }
+            allocated = file.length();
+        } catch (IOException e) {
+            System.out.println(error + e);
+        }
+    }
+
+    /**
+     * Fills the buffer with bytes from the file starting at the given position.
+     *
+     * @param buffer The buffer to fill. Reads until it has no bytes remaining.
+     * @param position Position in file to start reading from.
+     * @throws IOException if the end of the file is reached before the buffer is full.
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        if (position < 0) {
+            throw new IOException("Negative seek offset");
+        }
+
+        long start = System.nanoTime();
+        int bytes = buffer.remaining();
+
+        if (growthChunk > 0) {
+            readGrowing(buffer, position);
+        } else if (cache != null) {
+            file();
+            cache.read(buffer, position);
+        } else {
+            file().readFully(buffer, position);
+        }
+        stats.recordRead(bytes, System.nanoTime() - start);
+    }
+
+    /**
+     * Fills the buffer from a file that grows in chunks. Anything between the end of the file and the length it was given reads as zeros.
+     *
+     * @param buffer The buffer to fill. Reads until it has no bytes remaining.
+     * @param position Position in file to start reading from.
+     * @throws IOException if the buffer reaches past both the end of the file and the length it was given.
+     */
+    private void readGrowing(ByteBuffer buffer, long position) throws IOException {
+        long end = position + buffer.remaining();
+
+        if (cache != null) {
+            long written = Math.min(size(), end);
+
+            if (position < written) {
+                ByteBuffer stored = buffer.slice();
+                stored.limit((int) (written - position));
+                cache.read(stored, position);
+                buffer.position(buffer.position() + stored.limit());
+            }
+        } else {
+            file().read(buffer, position);
+        }
+
+        if (buffer.hasRemaining()) {
+            if (end > Math.max(length, size())) {
+                throw new EOFException();
+            }
+
+            while (buffer.hasRemaining()) {
+                buffer.put((byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Extends a file that grows in chunks so it reaches at least the given position. It grows to the next whole chunk, but never past the
+     * length it was given unless the write itself goes further.
+     *
+     * @param end The position the file has to reach.
+     * @throws IOException if the file could not be extended.
+     */
+    private synchronized void grow(long end) throws IOException {
+        if (end <= allocated) {
+            return;
+        }
+
+        long chunked = (end + growthChunk - 1) / growthChunk * growthChunk;
+        long newLength = Math.max(end, Math.min(chunked, length));
+
+        if (newLength > file().length()) {
+            file.setLength(newLength);
+        }
+        allocated = newLength;
+    }
+
+    /**
+     * Writes all the remaining bytes in the buffer to the file starting at the given position.
+     *
+     * @param buffer The data to write.
+     * @param position Position in file to start writing from.
+     * @throws IOException if the data could not be written.
+     */
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        if (position < 0) {
+            throw new IOException("Negative seek offset");
+        }
+
+        writeCount.incrementAndGet();
+
+        long start = System.nanoTime();
+        int bytes = buffer.remaining();
+
+        if (cache != null) {
+            file();
+            cache.write(buffer, position);
+        } else {
+            if (growthChunk > 0 && position + buffer.remaining() > allocated) {
+                grow(position + buffer.remaining());
+            }
+            file().write(buffer, position);
+        }
+        stats.recordWrite(bytes, System.nanoTime() - start);
+    }
+
+    /**
+     * Forces the file unless everything written before this call has already been forced. Threads that wait while another thread forces the
+     * file find their writes already forced and return without forcing again.
+     *
+     * @return True if operation successful.
+     */
+    private boolean sync() {
+        long target = writeCount.get();
+
+        synchronized (syncLock) {
+            if (syncedCount >= target) {
+                return true;
+            }
+
+            long forcedCount = writeCount.get();
+
+            if (!force()) {
+                return false;
+            }
+            syncedCount = forcedCount;
+            return true;
+        }
+    }
+
+    /**
+     * Schedules a background sync unless one is already waiting to run, in which case it will pick up these writes as well.
+     */
+    private synchronized void scheduleFlush() {
+        if (pendingFlush != null && !pendingFlush.isDone()) {
+            return;
+        }
+        pendingFlush = flusher().schedule(this::sync, asyncFlushDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the thread shared by every DataSaver for background syncs, starting it the first time it is needed.
+     *
+     * @return The flusher.
+     */
+    private static synchronized ScheduledExecutorService flusher() {
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "DataSaver flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return flusher;
+    }
+
+    /**
+     * Gets the threads shared by every DataSaver and StorageHashTable for asynchronous reads and writes, starting them the first time they are
+     * needed.
+     *
+     * @return The I/O executor.
+     */
+    static synchronized ExecutorService ioExecutor() {
+        if (ioExecutor == null) {
+            ioExecutor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "DataSaver I/O");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return ioExecutor;
+    }
+
+    /**
+     * Gets the length of the file, including data that is only in the page cache.
+     *
+     * @return The length in bytes.
+     * @throws IOException if the length could not be read.
+     */
+    private long size() throws IOException {
+        if (cache != null) {
+            file();
+            return cache.length();
+        }
+        return file().length();
+    }
+
+    /**
+     * Gets the open file.
+     *
+     * @return The file.
+     * @throws ClosedChannelException if the file was never opened or has been closed.
+     */
+    private StorageBackend file() throws ClosedChannelException {
+        if (file == null || file.isClosed()) {
+            throw new ClosedChannelException();
+        }
+        return file;
+    }
 }
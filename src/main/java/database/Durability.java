@@ -0,0 +1,23 @@
+package database;
+
+/**
+ * How hard a DataSaver tries to get written data onto the storage device before a write returns.
+ *
+ * @author Jiyansh Agarwal
+ */
+public enum Durability {
+    /**
+     * Every write is forced to the storage device before it returns. Slowest, but nothing is lost if the machine loses power.
+     */
+    SYNC,
+    /**
+     * Writes are forced by a background flush shortly after they are made. Every write made before the flush runs shares the same flush, so
+     * many writes cost a single force. Closing the file forces any writes the flush hasn't reached yet.
+     */
+    ASYNC,
+    /**
+     * Writes are handed to the operating system, which decides when to write them out. They are only forced by <code>force()</code>, or by
+     * <code>close()</code> if anything was written since the last force, so a crash before either can lose them.
+     */
+    NONE
+}
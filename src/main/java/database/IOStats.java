@@ -0,0 +1,237 @@
+package database;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters for the I/O done by one or more DataSavers and the lookups done by a StorageHashTable. Every counter is a LongAdder, so threads
+ * counting at the same time don't contend with each other and counting costs little more than reading the clock. A StorageHashTable shares
+ * one IOStats between its table and key files and registers it as an MBean, so the I/O each lookup or change costs can be watched while the
+ * program runs.
+ *
+ * @author Jiyansh Agarwal
+ */
+public class IOStats implements IOStatsMBean {
+
+    final private LongAdder opens = new LongAdder();
+    final private LongAdder reads = new LongAdder();
+    final private LongAdder writes = new LongAdder();
+    final private LongAdder bytesRead = new LongAdder();
+    final private LongAdder bytesWritten = new LongAdder();
+    final private LongAdder syncs = new LongAdder();
+    final private LongAdder readNanos = new LongAdder();
+    final private LongAdder writeNanos = new LongAdder();
+    final private LongAdder syncNanos = new LongAdder();
+    final private LongAdder lookups = new LongAdder();
+    final private LongAdder probes = new LongAdder();
+    final private LongAdder lookupNanos = new LongAdder();
+    final private LongAdder bloomRejections = new LongAdder();
+
+    private ObjectName name;
+
+    /**
+     * Counts a file being opened.
+     */
+    void recordOpen() {
+        opens.increment();
+    }
+
+    /**
+     * Counts a read.
+     *
+     * @param bytes The number of bytes read.
+     * @param nanos How long the read took.
+     */
+    void recordRead(int bytes, long nanos) {
+        reads.increment();
+        bytesRead.add(bytes);
+        readNanos.add(nanos);
+    }
+
+    /**
+     * Counts a write.
+     *
+     * @param bytes The number of bytes written.
+     * @param nanos How long the write took.
+     */
+    void recordWrite(int bytes, long nanos) {
+        writes.increment();
+        bytesWritten.add(bytes);
+        writeNanos.add(nanos);
+    }
+
+    /**
+     * Counts a file being forced to the storage device.
+     *
+     * @param nanos How long the force took.
+     */
+    void recordSync(long nanos) {
+        syncs.increment();
+        syncNanos.add(nanos);
+    }
+
+    /**
+     * Counts a key lookup.
+     *
+     * @param blocks The number of blocks examined.
+     * @param nanos How long the lookup took.
+     */
+    void recordLookup(int blocks, long nanos) {
+        lookups.increment();
+        probes.add(blocks);
+        lookupNanos.add(nanos);
+    }
+
+    /**
+     * Counts a lookup that a Bloom filter answered without probing.
+     */
+    void recordBloomRejection() {
+        bloomRejections.increment();
+    }
+
+    /**
+     * Registers these stats with the platform MBean server so they can be watched through JMX. Replaces stats already registered under the
+     * same name, such as those of a table that was opened again without being closed.
+     *
+     * @param type The kind of object the stats belong to.
+     * @param file The file the stats belong to.
+     * @return True if operation successful.
+     */
+    public synchronized boolean register(String type, String file) {
+        String error = "IOStats register: ";
+        try {
+            ObjectName objectName = new ObjectName("database:type=" + type + ",name=" + ObjectName.quote(file));
+
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            }
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            name = objectName;
+            return true;
+        } catch (JMException e) {
+            System.out.println(error + e);
+        }
+        return false;
+    }
+
+    /**
+     * Removes these stats from the platform MBean server if they were registered.
+     */
+    public synchronized void unregister() {
+        String error = "IOStats unregister: ";
+        try {
+            if (name != null && ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            System.out.println(error + e);
+        }
+        name = null;
+    }
+
+    @Override
+    public long getOpens() {
+        return opens.sum();
+    }
+
+    @Override
+    public long getReads() {
+        return reads.sum();
+    }
+
+    @Override
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getSyncs() {
+        return syncs.sum();
+    }
+
+    @Override
+    public long getReadNanos() {
+        return readNanos.sum();
+    }
+
+    @Override
+    public long getWriteNanos() {
+        return writeNanos.sum();
+    }
+
+    @Override
+    public long getSyncNanos() {
+        return syncNanos.sum();
+    }
+
+    @Override
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    @Override
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    @Override
+    public long getLookupNanos() {
+        return lookupNanos.sum();
+    }
+
+    @Override
+    public long getBloomRejections() {
+        return bloomRejections.sum();
+    }
+
+    @Override
+    public double getAverageProbes() {
+        long count = lookups.sum();
+        return count == 0 ? 0 : (double) probes.sum() / count;
+    }
+
+    @Override
+    public double getBytesReadPerLookup() {
+        long count = lookups.sum();
+        return count == 0 ? 0 : (double) bytesRead.sum() / count;
+    }
+
+    @Override
+    public void reset() {
+        opens.reset();
+        reads.reset();
+        writes.reset();
+        bytesRead.reset();
+        bytesWritten.reset();
+        syncs.reset();
+        readNanos.reset();
+        writeNanos.reset();
+        syncNanos.reset();
+        lookups.reset();
+        probes.reset();
+        lookupNanos.reset();
+        bloomRejections.reset();
+    }
+
+    /**
+     * @return the counters on one line, for logging.
+     */
+    @Override
+    public String toString() {
+        return "opens=" + getOpens() + " reads=" + getReads() + " writes=" + getWrites() + " bytesRead=" + getBytesRead() + " bytesWritten="
+                + getBytesWritten() + " syncs=" + getSyncs() + " lookups=" + getLookups() + " probes=" + getProbes()
+                + " bloomRejections=" + getBloomRejections();
+    }
+}
@@ -0,0 +1,89 @@
+package database;
+
+/**
+ * The management interface of IOStats, so the I/O of each StorageHashTable can be watched through JMX.
+ *
+ * @author Jiyansh Agarwal
+ */
+public interface IOStatsMBean {
+
+    /**
+     * @return the number of times a file was opened.
+     */
+    long getOpens();
+
+    /**
+     * @return the number of reads.
+     */
+    long getReads();
+
+    /**
+     * @return the number of writes.
+     */
+    long getWrites();
+
+    /**
+     * @return the number of bytes read.
+     */
+    long getBytesRead();
+
+    /**
+     * @return the number of bytes written.
+     */
+    long getBytesWritten();
+
+    /**
+     * @return the number of times a file was forced to the storage device.
+     */
+    long getSyncs();
+
+    /**
+     * @return the total time spent reading in nanoseconds.
+     */
+    long getReadNanos();
+
+    /**
+     * @return the total time spent writing in nanoseconds.
+     */
+    long getWriteNanos();
+
+    /**
+     * @return the total time spent forcing files in nanoseconds.
+     */
+    long getSyncNanos();
+
+    /**
+     * @return the number of key lookups.
+     */
+    long getLookups();
+
+    /**
+     * @return the number of blocks examined by all the lookups.
+     */
+    long getProbes();
+
+    /**
+     * @return the total time spent in lookups in nanoseconds.
+     */
+    long getLookupNanos();
+
+    /**
+     * @return the number of lookups a Bloom filter answered without examining any blocks. They aren't counted as lookups.
+     */
+    long getBloomRejections();
+
+    /**
+     * @return the average number of blocks examined per lookup. 0 if there were no lookups.
+     */
+    double getAverageProbes();
+
+    /**
+     * @return the average number of bytes read per lookup, which shows how much I/O each lookup costs. 0 if there were no lookups.
+     */
+    double getBytesReadPerLookup();
+
+    /**
+     * Sets every counter back to 0.
+     */
+    void reset();
+}
@@ -0,0 +1,202 @@
+package database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Storage that lives only in memory, either on the Java heap or off heap in direct buffers. The bytes are kept in fixed size chunks that are
+ * only allocated once something is written to them, so a large empty table costs almost nothing and the storage can grow past 2 GB.
+ *
+ * @author Jiyansh Agarwal
+ */
+class MemoryStorage implements StorageBackend {
+
+    final static private int CHUNK_SIZE = 64 * 1024;
+
+    final private boolean DIRECT;
+    final private List<ByteBuffer> chunks = new ArrayList<>();          //Null chunks have never been written and read as zeros.
+    private long length = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates empty storage.
+     *
+     * @param direct Set to true to keep the bytes off heap in direct buffers.
+     */
+    MemoryStorage(boolean direct) {
+        this.DIRECT = direct;
+    }
+
+    /**
+     * Reads bytes into the buffer until it is full or the end of the storage is reached.
+     *
+     * @param buffer The buffer to fill.
+     * @param position Position to start reading from.
+     * @return The number of bytes read.
+     * @throws IOException if the storage has been closed.
+     */
+    @Override
+    public synchronized int read(ByteBuffer buffer, long position) throws IOException {
+        checkOpen();
+        int total = 0;
+
+        while (buffer.hasRemaining() && position < length) {
+            int offset = (int) (position % CHUNK_SIZE);
+            int count = (int) Math.min(Math.min(buffer.remaining(), CHUNK_SIZE - offset), length - position);
+            ByteBuffer chunk = chunk(position, false);
+
+            if (chunk == null) {
+                for (int i = 0; i < count; i++) {
+                    buffer.put((byte) 0);
+                }
+            } else {
+                buffer.put(chunk.slice(offset, count));
+            }
+            total += count;
+            position += count;
+        }
+        return total;
+    }
+
+    /**
+     * Writes all the remaining bytes in the buffer, growing the storage if needed.
+     *
+     * @param buffer The data to write.
+     * @param position Position to start writing from.
+     * @throws IOException if the storage has been closed.
+     */
+    @Override
+    public synchronized void write(ByteBuffer buffer, long position) throws IOException {
+        checkOpen();
+
+        while (buffer.hasRemaining()) {
+            int offset = (int) (position % CHUNK_SIZE);
+            int count = Math.min(buffer.remaining(), CHUNK_SIZE - offset);
+
+            chunk(position, true).slice(offset, count).put(buffer.slice().limit(count));
+            buffer.position(buffer.position() + count);
+            position += count;
+        }
+        length = Math.max(length, position);
+    }
+
+    /**
+     * @return the length of the storage in bytes.
+     * @throws IOException if the storage has been closed.
+     */
+    @Override
+    public synchronized long length() throws IOException {
+        checkOpen();
+        return length;
+    }
+
+    /**
+     * Sets the length of the storage. Chunks past the new length are dropped and the rest of the last chunk is zeroed, so the storage reads
+     * as zeros if it grows again.
+     *
+     * @param length The new length in bytes.
+     * @throws IOException if the storage has been closed.
+     */
+    @Override
+    public synchronized void setLength(long length) throws IOException {
+        checkOpen();
+
+        if (length < this.length) {
+            long chunkCount = (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+            while (chunks.size() > chunkCount) {
+                chunks.remove(chunks.size() - 1);
+            }
+
+            ByteBuffer last = length % CHUNK_SIZE == 0 ? null : chunk(length, false);
+
+            if (last != null) {
+                for (int i = (int) (length % CHUNK_SIZE); i < CHUNK_SIZE; i++) {
+                    last.put(i, (byte) 0);
+                }
+            }
+        }
+        this.length = length;
+    }
+
+    /**
+     * Does nothing because the storage only lives in memory.
+     *
+     * @throws IOException if the storage has been closed.
+     */
+    @Override
+    public synchronized void sync() throws IOException {
+        checkOpen();
+    }
+
+    /**
+     * @return 0 because the storage only lives in memory.
+     */
+    @Override
+    public int getSegmentCount() {
+        return 0;
+    }
+
+    /**
+     * Drops every chunk.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        chunks.clear();
+        length = 0;
+    }
+
+    /**
+     * @return true if the storage has been closed.
+     */
+    @Override
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Gets the chunk that holds a position.
+     *
+     * @param position The position.
+     * @param create Set to true to allocate the chunk if it has never been written.
+     * @return The chunk. Null if it has never been written and <code>create</code> is false.
+     */
+    private ByteBuffer chunk(long position, boolean create) {
+        long index = position / CHUNK_SIZE;
+
+        if (index >= Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException("MemoryStorage: Position " + position + " is too large!");
+        }
+
+        while (create && chunks.size() <= index) {
+            chunks.add(null);
+        }
+
+        if (index >= chunks.size()) {
+            return null;
+        }
+
+        ByteBuffer chunk = chunks.get((int) index);
+
+        if (chunk == null && create) {
+            chunk = DIRECT ? ByteBuffer.allocateDirect(CHUNK_SIZE) : ByteBuffer.allocate(CHUNK_SIZE);
+            chunks.set((int) index, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Checks that the storage hasn't been closed.
+     *
+     * @throws ClosedChannelException if it has been closed.
+     */
+    private void checkOpen() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+}
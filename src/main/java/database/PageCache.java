@@ -0,0 +1,294 @@
+package database;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed size cache of file pages that sits between a DataSaver and its file. Pages are evicted least recently used first. In write back mode
+ * written pages are only marked dirty and are written to the file when they are evicted or when the cache is flushed.
+ *
+ * @author Jiyansh Agarwal
+ */
+public class PageCache {
+
+    /**
+     * One cached page of the file.
+     */
+    private static class Page {
+
+        final long number;
+        final byte[] data;
+        int length;                                                     //Number of bytes of the page that are part of the file.
+        boolean dirty;
+
+        Page(long number, int pageSize) {
+            this.number = number;
+            this.data = new byte[pageSize];
+        }
+    }
+
+    final private int PAGE_SIZE;
+    final private int MAX_PAGES;
+    final private boolean WRITE_BACK;
+    final private StorageBackend io;
+    final private LinkedHashMap<Long, Page> pages;
+
+    private long fileLength;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long pagesWritten = 0;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param io Where pages are loaded from and written to.
+     * @param pageSize The size of each page in bytes.
+     * @param budget The most memory the cached pages may use in bytes. At least one page is always cached.
+     * @param writeBack Set to true to keep written pages in memory until they are evicted or flushed. False writes through to the file.
+     * @throws IOException if the file length could not be read.
+     */
+    PageCache(StorageBackend io, int pageSize, long budget, boolean writeBack) throws IOException {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("PageCache Constructor: Page size must be greater than 0!");
+        }
+
+        this.io = io;
+        this.PAGE_SIZE = pageSize;
+        this.MAX_PAGES = (int) Math.max(1, Math.min(Integer.MAX_VALUE, budget / pageSize));
+        this.WRITE_BACK = writeBack;
+        this.pages = new LinkedHashMap<>(16, 0.75f, true);                 //Access order makes the eldest entry the least recently used.
+        this.fileLength = io.length();
+    }
+
+    /**
+     * Fills the buffer with bytes from the file starting at the given position.
+     *
+     * @param buffer The buffer to fill.
+     * @param position Position in file to start reading from.
+     * @throws IOException if the end of the file is reached before the buffer is full.
+     */
+    synchronized void read(ByteBuffer buffer, long position) throws IOException {
+        if (position + buffer.remaining() > fileLength) {
+            throw new EOFException();
+        }
+
+        while (buffer.hasRemaining()) {
+            Page page = getPage(position / PAGE_SIZE, true);
+            int offset = (int) (position % PAGE_SIZE);
+            int length = Math.min(buffer.remaining(), PAGE_SIZE - offset);
+
+            buffer.put(page.data, offset, length);
+            position += length;
+        }
+    }
+
+    /**
+     * Writes all the remaining bytes in the buffer to the cache. In write through mode they are also written to the file.
+     *
+     * @param buffer The data to write.
+     * @param position Position in file to start writing from.
+     * @throws IOException if the data could not be written.
+     */
+    synchronized void write(ByteBuffer buffer, long position) throws IOException {
+        if (!WRITE_BACK) {
+            io.write(buffer.duplicate(), position);
+        }
+
+        while (buffer.hasRemaining()) {
+            int offset = (int) (position % PAGE_SIZE);
+            int length = Math.min(buffer.remaining(), PAGE_SIZE - offset);
+            Page page;
+
+            if (WRITE_BACK) {
+                page = getPage(position / PAGE_SIZE, length < PAGE_SIZE);       //A page that is completely overwritten doesn't need to be read.
+            } else {
+                page = pages.get(position / PAGE_SIZE);                         //Write through only updates pages that are already cached.
+            }
+
+            if (page == null) {
+                buffer.position(buffer.position() + length);
+            } else {
+                buffer.get(page.data, offset, length);
+                page.length = Math.max(page.length, offset + length);
+                page.dirty = WRITE_BACK;
+            }
+            position += length;
+        }
+
+        fileLength = Math.max(fileLength, position);
+    }
+
+    /**
+     * Writes every dirty page to the file in file order.
+     *
+     * @throws IOException if a page could not be written.
+     */
+    synchronized void flush() throws IOException {
+        List<Page> dirty = new ArrayList<>();
+
+        for (Page page : pages.values()) {
+            if (page.dirty) {
+                dirty.add(page);
+            }
+        }
+        dirty.sort((a, b) -> Long.compare(a.number, b.number));
+
+        for (Page page : dirty) {
+            writePage(page);
+        }
+    }
+
+    /**
+     * Flushes and then drops every cached page. Must be called whenever the file is changed without going through the cache.
+     *
+     * @throws IOException if a page could not be written.
+     */
+    synchronized void invalidate() throws IOException {
+        flush();
+        pages.clear();
+        fileLength = io.length();
+    }
+
+    /**
+     * Drops every cached page without writing it. Used when the data in the file is being thrown away, so dirty pages aren't written first.
+     */
+    synchronized void discard() {
+        pages.clear();
+    }
+
+    /**
+     * @return the length of the file including data that is only in the cache.
+     */
+    synchronized long length() {
+        return fileLength;
+    }
+
+    /**
+     * @return the number of reads and writes that found their page in the cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of reads and writes that had to load their page from the file.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of pages dropped to make room for other pages.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of dirty pages written to the file.
+     */
+    public synchronized long getPagesWritten() {
+        return pagesWritten;
+    }
+
+    /**
+     * @return the number of pages waiting to be written to the file.
+     */
+    public synchronized int getDirtyPages() {
+        int dirty = 0;
+
+        for (Page page : pages.values()) {
+            if (page.dirty) {
+                dirty++;
+            }
+        }
+        return dirty;
+    }
+
+    /**
+     * @return the number of pages currently cached.
+     */
+    public synchronized int getCachedPages() {
+        return pages.size();
+    }
+
+    /**
+     * @return the most pages that can be cached at once.
+     */
+    public int getCapacity() {
+        return MAX_PAGES;
+    }
+
+    /**
+     * @return the size of each page in bytes.
+     */
+    public int getPageSize() {
+        return PAGE_SIZE;
+    }
+
+    /**
+     * Gets a page from the cache, loading it from the file if it isn't cached.
+     *
+     * @param number The page number.
+     * @param load Set to false if the page will be completely overwritten, so a missing page doesn't need to be read.
+     * @return The page.
+     * @throws IOException if the page could not be read or an evicted page could not be written.
+     */
+    private Page getPage(long number, boolean load) throws IOException {
+        Page page = pages.get(number);
+
+        if (page != null) {
+            hits++;
+            return page;
+        }
+
+        misses++;
+        page = new Page(number, PAGE_SIZE);
+
+        if (load) {
+            page.length = io.read(ByteBuffer.wrap(page.data), number * PAGE_SIZE);
+        }
+
+        pages.put(number, page);
+        evict();
+        return page;
+    }
+
+    /**
+     * Drops least recently used pages until the cache is within its budget.
+     *
+     * @throws IOException if a dirty page could not be written.
+     */
+    private void evict() throws IOException {
+        Iterator<Map.Entry<Long, Page>> eldest = pages.entrySet().iterator();
+
+        while (pages.size() > MAX_PAGES && eldest.hasNext()) {
+            Page page = eldest.next().getValue();
+
+            if (page.dirty) {
+                writePage(page);
+            }
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Writes a page to the file and marks it clean.
+     *
+     * @param page The page to write.
+     * @throws IOException if the page could not be written.
+     */
+    private void writePage(Page page) throws IOException {
+        io.write(ByteBuffer.wrap(page.data, 0, page.length), page.number * PAGE_SIZE);
+        page.dirty = false;
+        pagesWritten++;
+    }
+}
@@ -0,0 +1,22 @@
+package database;
+
+/**
+ * How a StorageHashTable places an entry whose block is already taken, and so how far a lookup has to probe to find it.
+ *
+ * @author Jiyansh Agarwal
+ */
+public enum ProbingScheme {
+
+    /**
+     * An entry goes in the first free block after the one it hashes to. Deleted entries leave a DELETED marker behind that lookups step
+     * over, so probes get longer as the table fills and entries are deleted.
+     */
+    LINEAR,
+    /**
+     * Robin Hood hashing. An entry that has probed further than the entry in its way takes that block, and the entries after it move along
+     * one block, so every entry stays close to the block it hashes to and a lookup stops as soon as it passes where its key would be.
+     * Deleting an entry moves the entries after it back one block instead of leaving a marker. Adding and deleting may rewrite a few
+     * neighbouring blocks, in exchange for short probes even when the table is nearly full.
+     */
+    ROBIN_HOOD
+}
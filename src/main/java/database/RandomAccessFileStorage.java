@@ -0,0 +1,150 @@
+package database;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+
+/**
+ * Storage in a single file read and written with RandomAccessFile seeks, the way every DataSaver used to work. Each read or write is one seek
+ * followed by one transfer, so calls are serialized on the file.
+ *
+ * @author Jiyansh Agarwal
+ */
+class RandomAccessFileStorage implements StorageBackend {
+
+    final private RandomAccessFile file;
+    private boolean closed = false;
+
+    /**
+     * Opens the file, creating it if it doesn't exist.
+     *
+     * @param path The file.
+     * @throws IOException if the file could not be opened.
+     */
+    RandomAccessFileStorage(File path) throws IOException {
+        this.file = new RandomAccessFile(path, "rw");
+    }
+
+    /**
+     * Reads bytes into the buffer until it is full or the end of the file is reached.
+     *
+     * @param buffer The buffer to fill.
+     * @param position Position in file to start reading from.
+     * @return The number of bytes read.
+     * @throws IOException if the file could not be read.
+     */
+    @Override
+    public synchronized int read(ByteBuffer buffer, long position) throws IOException {
+        checkOpen();
+        byte[] bytes = buffer.hasArray() ? buffer.array() : new byte[buffer.remaining()];
+        int start = buffer.hasArray() ? buffer.arrayOffset() + buffer.position() : 0;
+        int total = 0;
+
+        file.seek(position);
+
+        while (total < buffer.remaining()) {
+            int read = file.read(bytes, start + total, buffer.remaining() - total);
+
+            if (read < 0) {
+                break;                                                  //End of the file.
+            }
+            total += read;
+        }
+
+        if (buffer.hasArray()) {
+            buffer.position(buffer.position() + total);
+        } else {
+            buffer.put(bytes, 0, total);
+        }
+        return total;
+    }
+
+    /**
+     * Writes all the remaining bytes in the buffer to the file.
+     *
+     * @param buffer The data to write.
+     * @param position Position in file to start writing from.
+     * @throws IOException if the data could not be written.
+     */
+    @Override
+    public synchronized void write(ByteBuffer buffer, long position) throws IOException {
+        checkOpen();
+        int length = buffer.remaining();
+
+        file.seek(position);
+
+        if (buffer.hasArray()) {
+            file.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            file.write(bytes);
+        }
+    }
+
+    /**
+     * @return the length of the file in bytes.
+     * @throws IOException if the length could not be read.
+     */
+    @Override
+    public synchronized long length() throws IOException {
+        checkOpen();
+        return file.length();
+    }
+
+    /**
+     * Sets the length of the file. If new length is less than previous length, data is truncated.
+     *
+     * @param length The new length in bytes.
+     * @throws IOException if the length could not be changed.
+     */
+    @Override
+    public synchronized void setLength(long length) throws IOException {
+        checkOpen();
+        file.setLength(length);
+    }
+
+    /**
+     * Forces the file to the storage device.
+     *
+     * @throws IOException if the file could not be forced.
+     */
+    @Override
+    public synchronized void sync() throws IOException {
+        checkOpen();
+        file.getFD().sync();
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException if the file could not be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        file.close();
+    }
+
+    /**
+     * @return true if the file has been closed.
+     */
+    @Override
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Checks that the file hasn't been closed.
+     *
+     * @throws ClosedChannelException if it has been closed.
+     */
+    private void checkOpen() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+}
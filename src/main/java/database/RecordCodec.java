@@ -0,0 +1,209 @@
+package database;
+
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes and decodes length prefixed Strings in the same modified UTF-8 format as RandomAccessFile.writeUTF, but straight into and out of
+ * ByteBuffers. ASCII text, which is almost everything stored in the library, is copied byte for byte without any character decoding.
+ *
+ * @author Jiyansh Agarwal
+ */
+public final class RecordCodec {
+
+    final static private int MAX_ENCODED_LENGTH = 65535;
+    final static private ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+
+    private RecordCodec() {
+    }
+
+    /**
+     * Gets the number of bytes a String takes up once encoded, not counting the two byte length.
+     *
+     * @param text The text to measure.
+     * @return The encoded length in bytes.
+     */
+    public static int encodedLength(String text) {
+        int length = text.length();
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (c >= 0x0800) {
+                length += 2;
+            } else if (c == 0 || c >= 0x0080) {
+                length += 1;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Gets the number of bytes a String takes up once encoded, including the two byte length. This is the slot size it needs in a block.
+     *
+     * @param text The text to measure.
+     * @return The encoded length in bytes.
+     */
+    public static int slotLength(String text) {
+        return encodedLength(text) + 2;
+    }
+
+    /**
+     * Encodes a String with its two byte length at a position in the buffer. The buffer's position is not changed.
+     *
+     * @param text The text to encode.
+     * @param buffer The buffer to write into.
+     * @param offset Where to write the length. The text follows it.
+     * @return The number of bytes written, including the two byte length.
+     * @throws UTFDataFormatException if the encoded text is longer than 65535 bytes.
+     */
+    public static int encode(String text, ByteBuffer buffer, int offset) throws UTFDataFormatException {
+        int length = encodedLength(text);
+
+        if (length > MAX_ENCODED_LENGTH) {
+            throw new UTFDataFormatException("Encoded text is too long: " + length + " bytes");
+        }
+
+        buffer.putShort(offset, (short) length);
+        int position = offset + 2;
+
+        if (length == text.length()) {
+            for (int i = 0; i < length; i++) {
+                buffer.put(position++, (byte) text.charAt(i));          //Fast path for ASCII text.
+            }
+            return length + 2;
+        }
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (c != 0 && c < 0x0080) {
+                buffer.put(position++, (byte) c);
+            } else if (c < 0x0800) {
+                buffer.put(position++, (byte) (0xC0 | (c >> 6)));
+                buffer.put(position++, (byte) (0x80 | (c & 0x3F)));
+            } else {
+                buffer.put(position++, (byte) (0xE0 | (c >> 12)));
+                buffer.put(position++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put(position++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return length + 2;
+    }
+
+    /**
+     * Decodes a String stored with its two byte length at a position in the buffer. The buffer's position is not changed.
+     *
+     * @param buffer The buffer to read from.
+     * @param offset Where the length is stored. The text follows it.
+     * @return The decoded text.
+     * @throws UTFDataFormatException if the bytes are not valid modified UTF-8 or run past the end of the buffer.
+     */
+    public static String decode(ByteBuffer buffer, int offset) throws UTFDataFormatException {
+        if (offset < 0 || offset + 2 > buffer.limit()) {
+            throw new UTFDataFormatException("Encoded text runs past the end of the data");
+        }
+
+        int length = Short.toUnsignedInt(buffer.getShort(offset));
+        int start = offset + 2;
+
+        if (start + length > buffer.limit()) {
+            throw new UTFDataFormatException("Encoded text runs past the end of the data");
+        }
+
+        if (buffer.hasArray()) {
+            byte[] array = buffer.array();
+            int base = buffer.arrayOffset() + start;
+
+            if (isAscii(array, base, length)) {
+                return new String(array, base, length, StandardCharsets.ISO_8859_1);  //Fast path for ASCII text.
+            }
+        }
+
+        char[] chars = new char[length];
+        int count = 0;
+        int position = start;
+        int end = start + length;
+
+        while (position < end) {
+            int b = buffer.get(position) & 0xFF;
+
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+                position++;
+            } else if ((b & 0xE0) == 0xC0) {
+                if (position + 2 > end) {
+                    throw malformed(position - start);
+                }
+                int b2 = buffer.get(position + 1);
+
+                if ((b2 & 0xC0) != 0x80) {
+                    throw malformed(position - start);
+                }
+                chars[count++] = (char) (((b & 0x1F) << 6) | (b2 & 0x3F));
+                position += 2;
+            } else if ((b & 0xF0) == 0xE0) {
+                if (position + 3 > end) {
+                    throw malformed(position - start);
+                }
+                int b2 = buffer.get(position + 1);
+                int b3 = buffer.get(position + 2);
+
+                if ((b2 & 0xC0) != 0x80 || (b3 & 0xC0) != 0x80) {
+                    throw malformed(position - start);
+                }
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (b3 & 0x3F));
+                position += 3;
+            } else {
+                throw malformed(position - start);
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * Gets a buffer owned by the calling thread that can hold at least the given number of bytes. The same buffer is handed out again on the
+     * next call from the same thread, so it must not be kept.
+     *
+     * @param capacity The number of bytes needed.
+     * @return A cleared buffer with its limit set to <code>capacity</code>.
+     */
+    static ByteBuffer scratch(int capacity) {
+        ByteBuffer buffer = SCRATCH.get();
+
+        if (buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+            SCRATCH.set(buffer);
+        }
+        buffer.clear().limit(capacity);
+        return buffer;
+    }
+
+    /**
+     * Checks if a range of bytes is plain ASCII.
+     *
+     * @param bytes The bytes to check.
+     * @param start Start of the range.
+     * @param length Length of the range.
+     * @return True only if no byte has its top bit set.
+     */
+    private static boolean isAscii(byte[] bytes, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes the exception thrown for bytes that are not valid modified UTF-8.
+     *
+     * @param position Where the bad bytes are, counted from the start of the text.
+     * @return The exception.
+     */
+    private static UTFDataFormatException malformed(int position) {
+        return new UTFDataFormatException("Malformed input around byte " + position);
+    }
+}
@@ -0,0 +1,329 @@
+package database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * The typed columns of a StorageHashTable's records, in the order they are stored. Every column has a fixed size slot in a block: 4 bytes for
+ * an INT, 2 for a SHORT, 1 for a BOOLEAN and the maximum length plus a two byte length for a STRING. Records are still passed in and out of
+ * the table as Strings, and are converted once when they are written, but the table's typed getters read numbers and flags straight from their
+ * binary fields. Every add method returns the same object so columns can be chained.
+ * <p>
+ * A table records the schema it is stored with and is migrated once when it is opened with a different one. A table made before schemas were
+ * recorded is read with the String columns given to <code>storedAsStrings</code>, or with this schema if none were given.
+ *
+ * @author Jiyansh Agarwal
+ */
+public class Schema {
+
+    final private ArrayList<ColumnType> types = new ArrayList<>();
+    final private ArrayList<Integer> maxLengths = new ArrayList<>();
+    private Schema legacy;
+
+    /**
+     * Makes a schema where every column is a STRING, the same as the records of a table made without a schema.
+     *
+     * @param maxLengths The most bytes each record can take up once encoded, not counting its length.
+     * @return the schema.
+     */
+    public static Schema strings(int... maxLengths) {
+        Schema schema = new Schema();
+
+        for (int maxLength : maxLengths) {
+            schema.addString(maxLength);
+        }
+        return schema;
+    }
+
+    /**
+     * Adds an INT column.
+     *
+     * @return this schema.
+     */
+    public Schema addInt() {
+        return add(ColumnType.INT, 0);
+    }
+
+    /**
+     * Adds a SHORT column.
+     *
+     * @return this schema.
+     */
+    public Schema addShort() {
+        return add(ColumnType.SHORT, 0);
+    }
+
+    /**
+     * Adds a BOOLEAN column.
+     *
+     * @return this schema.
+     */
+    public Schema addBoolean() {
+        return add(ColumnType.BOOLEAN, 0);
+    }
+
+    /**
+     * Adds a STRING column.
+     *
+     * @param maxLength The most bytes the text can take up once encoded, not counting its length.
+     * @return this schema.
+     */
+    public Schema addString(int maxLength) {
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("Schema addString: Max length cannot be negative!");
+        }
+        return add(ColumnType.STRING, maxLength);
+    }
+
+    /**
+     * Sets the String columns a table was stored with before it recorded a schema, so an existing table is migrated to this schema the first
+     * time it is opened with it.
+     *
+     * @param maxLengths The max length of each String record the table was made with.
+     * @return this schema.
+     */
+    public Schema storedAsStrings(int... maxLengths) {
+        this.legacy = strings(maxLengths);
+        return this;
+    }
+
+    /**
+     * Makes a copy of this schema that can be changed without changing this schema.
+     *
+     * @return the copy.
+     */
+    public Schema copy() {
+        Schema copy = new Schema();
+        copy.types.addAll(types);
+        copy.maxLengths.addAll(maxLengths);
+        copy.legacy = legacy;
+        return copy;
+    }
+
+    /**
+     * @return the number of columns.
+     */
+    public int getColumnCount() {
+        return types.size();
+    }
+
+    /**
+     * @param column The column number, starting at 0.
+     * @return the type of the column.
+     */
+    public ColumnType getType(int column) {
+        return types.get(column);
+    }
+
+    /**
+     * @param column The column number, starting at 0.
+     * @return the max length of a STRING column. 0 for the other types.
+     */
+    public int getMaxLength(int column) {
+        return maxLengths.get(column);
+    }
+
+    /**
+     * Checks if another schema has the same columns. The String columns of a table made before schemas were recorded are not compared.
+     *
+     * @param other The other object.
+     * @return True if the columns match.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Schema)) {
+            return false;
+        }
+        return types.equals(((Schema) other).types) && maxLengths.equals(((Schema) other).maxLengths);
+    }
+
+    @Override
+    public int hashCode() {
+        return types.hashCode() * 31 + maxLengths.hashCode();
+    }
+
+    /**
+     * @return the String columns a table made before schemas were recorded was stored with. Null if none were given.
+     */
+    Schema getLegacy() {
+        return legacy;
+    }
+
+    /**
+     * Gets the size of a column's slot in a block.
+     *
+     * @param column The column number.
+     * @return The size in bytes, including the two byte length of a STRING.
+     */
+    int slotSize(int column) {
+        switch (types.get(column)) {
+            case INT:
+                return 4;
+            case SHORT:
+                return 2;
+            case BOOLEAN:
+                return 1;
+            default:
+                return maxLengths.get(column) + 2;
+        }
+    }
+
+    /**
+     * Checks that a value can be stored in a column.
+     *
+     * @param column The column number.
+     * @param value The value as text.
+     * @return True if it fits.
+     */
+    boolean accepts(int column, String value) {
+        if (value == null) {
+            return false;
+        }
+
+        try {
+            switch (types.get(column)) {
+                case INT:
+                    Integer.parseInt(value);
+                    return true;
+                case SHORT:
+                    Short.parseShort(value);
+                    return true;
+                case BOOLEAN:
+                    parseBoolean(value);
+                    return true;
+                default:
+                    return RecordCodec.slotLength(value) <= slotSize(column);
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stores a value in a column's binary field.
+     *
+     * @param column The column number.
+     * @param value The value as text.
+     * @param buffer The buffer to write into.
+     * @param offset Where the field starts.
+     * @return The number of bytes written.
+     * @throws IOException if the value can't be stored in the column.
+     */
+    int encode(int column, String value, ByteBuffer buffer, int offset) throws IOException {
+        if (!accepts(column, value)) {
+            throw new IOException("\"" + value + "\" can't be stored in a " + types.get(column) + " column of " + slotSize(column) + " bytes!");
+        }
+
+        switch (types.get(column)) {
+            case INT:
+                buffer.putInt(offset, Integer.parseInt(value));
+                return 4;
+            case SHORT:
+                buffer.putShort(offset, Short.parseShort(value));
+                return 2;
+            case BOOLEAN:
+                buffer.put(offset, parseBoolean(value) ? (byte) 1 : (byte) 0);
+                return 1;
+            default:
+                return RecordCodec.encode(value, buffer, offset);
+        }
+    }
+
+    /**
+     * Reads a column's field as text.
+     *
+     * @param column The column number.
+     * @param buffer The buffer to read from.
+     * @param offset Where the field starts.
+     * @return The value.
+     * @throws IOException if a STRING field is damaged.
+     */
+    String decode(int column, ByteBuffer buffer, int offset) throws IOException {
+        switch (types.get(column)) {
+            case INT:
+                return Integer.toString(buffer.getInt(offset));
+            case SHORT:
+                return Short.toString(buffer.getShort(offset));
+            case BOOLEAN:
+                return buffer.get(offset) != 0 ? "1" : "0";
+            default:
+                return RecordCodec.decode(buffer, offset);
+        }
+    }
+
+    /**
+     * Reads a column's field as a number. A STRING field is parsed.
+     *
+     * @param column The column number.
+     * @param buffer The buffer to read from.
+     * @param offset Where the field starts.
+     * @return The value. A BOOLEAN is 1 or 0.
+     * @throws IOException if a STRING field is damaged or isn't a number.
+     */
+    int decodeInt(int column, ByteBuffer buffer, int offset) throws IOException {
+        switch (types.get(column)) {
+            case INT:
+                return buffer.getInt(offset);
+            case SHORT:
+                return buffer.getShort(offset);
+            case BOOLEAN:
+                return buffer.get(offset) != 0 ? 1 : 0;
+            default:
+                try {
+                    return Integer.parseInt(RecordCodec.decode(buffer, offset));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Column " + column + " doesn't hold a number! " + e.getMessage());
+                }
+        }
+    }
+
+    /**
+     * Gets how many bytes a column's field takes up once packed without its unused slot space.
+     *
+     * @param column The column number.
+     * @param buffer The buffer holding the field.
+     * @param offset Where the field starts.
+     * @return The length in bytes.
+     */
+    int packedLength(int column, ByteBuffer buffer, int offset) {
+        if (types.get(column) == ColumnType.STRING) {
+            return 2 + Short.toUnsignedInt(buffer.getShort(offset));
+        }
+        return slotSize(column);
+    }
+
+    /**
+     * Adds a column.
+     *
+     * @param type The column's type.
+     * @param maxLength The max length of a STRING. 0 for the other types.
+     * @return this schema.
+     */
+    private Schema add(ColumnType type, int maxLength) {
+        types.add(type);
+        maxLengths.add(maxLength);
+        return this;
+    }
+
+    /**
+     * Parses a flag.
+     *
+     * @param value "1" or "true" for true, "0", "false" or "" for false.
+     * @return The flag.
+     * @throws IllegalArgumentException if the value isn't a flag.
+     */
+    private static boolean parseBoolean(String value) {
+        switch (value) {
+            case "1":
+            case "true":
+                return true;
+            case "0":
+            case "false":
+            case "":
+                return false;
+            default:
+                throw new IllegalArgumentException("\"" + value + "\" isn't a flag!");
+        }
+    }
+}
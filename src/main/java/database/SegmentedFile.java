@@ -0,0 +1,400 @@
+package database;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A file that may be split across several segment files of a fixed size. The first segment is the file itself and segment <code>i</code> is
+ * stored next to it with <code>.i</code> added to its name, so a file that fits in one segment looks exactly like an unsegmented file. Every
+ * segment has its own channel and, in memory mapped mode, its own mapping, so files larger than 2 GB can still be mapped.
+ *
+ * @author Jiyansh Agarwal
+ */
+class SegmentedFile implements StorageBackend {
+
+    /**
+     * One segment file.
+     */
+    private static class Segment {
+
+        final RandomAccessFile file;
+        final FileChannel channel;
+        volatile MappedByteBuffer mapped;
+
+        Segment(File path) throws IOException {
+            file = new RandomAccessFile(path, "rw");
+            channel = file.getChannel();
+        }
+    }
+
+    final private File path;
+    final private long SEGMENT_SIZE;
+    final private boolean MEMORY_MAPPED;
+    final private List<Segment> segments = new CopyOnWriteArrayList<>();      //Reads don't lock, so they see a stable list of segments.
+    private volatile boolean closed = false;
+
+    /**
+     * Opens every existing segment of the file, creating the first segment if it doesn't exist.
+     *
+     * @param path The path of the first segment.
+     * @param segmentSize The size of each segment in bytes. Long.MAX_VALUE keeps the whole file in one segment.
+     * @param memoryMapped Set to true to memory map each segment.
+     * @throws IOException if a segment could not be opened or mapped.
+     */
+    SegmentedFile(File path, long segmentSize, boolean memoryMapped) throws IOException {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("SegmentedFile Constructor: Segment size must be greater than 0!");
+        }
+
+        this.path = path;
+        this.SEGMENT_SIZE = segmentSize;
+        this.MEMORY_MAPPED = memoryMapped;
+
+        segments.add(new Segment(path));
+
+        while (segmentPath(segments.size()).exists()) {
+            segments.add(new Segment(segmentPath(segments.size())));
+        }
+
+        map();
+    }
+
+    /**
+     * Reads bytes into the buffer until it is full or the end of the file is reached.
+     *
+     * @param buffer The buffer to fill.
+     * @param position Position in file to start reading from.
+     * @return The number of bytes read.
+     * @throws IOException if the file could not be read.
+     */
+    @Override
+    public int read(ByteBuffer buffer, long position) throws IOException {
+        checkOpen();
+        int total = 0;
+
+        while (buffer.hasRemaining()) {
+            int index = segmentIndex(position);
+
+            if (index >= segments.size()) {
+                break;
+            }
+
+            Segment segment = segments.get(index);
+            MappedByteBuffer mapped = segment.mapped;
+            long offset = position % SEGMENT_SIZE;
+            int length = (int) Math.min(buffer.remaining(), SEGMENT_SIZE - offset);
+            int read;
+
+            if (mapped != null && offset + length <= mapped.capacity()) {
+                buffer.put(mapped.slice((int) offset, length));
+                read = length;
+            } else {
+                ByteBuffer part = buffer.slice().limit(length);
+                read = Math.max(0, segment.channel.read(part, offset));
+                buffer.position(buffer.position() + read);
+            }
+
+            total += read;
+            position += read;
+
+            if (read < length) {
+                break;                                                  //End of the file.
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Writes all the remaining bytes in the buffer to the file, creating segments as they are needed.
+     *
+     * @param buffer The data to write.
+     * @param position Position in file to start writing from.
+     * @throws IOException if the data could not be written.
+     */
+    @Override
+    public synchronized void write(ByteBuffer buffer, long position) throws IOException {
+        checkOpen();
+
+        while (buffer.hasRemaining()) {
+            Segment segment = segment(segmentIndex(position));
+            long offset = position % SEGMENT_SIZE;
+            int length = (int) Math.min(buffer.remaining(), SEGMENT_SIZE - offset);
+
+            MappedByteBuffer mapped = segment.mapped;
+            ByteBuffer part = buffer.slice().limit(length);
+
+            if (mapped != null && offset + length <= mapped.capacity()) {
+                mapped.slice((int) offset, length).put(part);
+            } else {
+                while (part.hasRemaining()) {
+                    segment.channel.write(part, offset + part.position());
+                }
+            }
+            buffer.position(buffer.position() + length);
+            position += length;
+        }
+    }
+
+    /**
+     * @return the length of the file in bytes, across every segment.
+     * @throws IOException if the length could not be read.
+     */
+    @Override
+    public long length() throws IOException {
+        checkOpen();
+        int last = segments.size() - 1;
+        return last * SEGMENT_SIZE + segments.get(last).channel.size();
+    }
+
+    /**
+     * Sets the length of the file, adding or deleting segments as needed. If new length is less than previous length, data is truncated.
+     *
+     * @param length The new length in bytes.
+     * @throws IOException if the length could not be changed.
+     */
+    @Override
+    public synchronized void setLength(long length) throws IOException {
+        checkOpen();
+        int count = length == 0 ? 1 : segmentIndex(length - 1) + 1;
+
+        while (segments.size() > count) {
+            Segment segment = segments.remove(segments.size() - 1);
+            segment.mapped = null;
+            segment.file.close();
+
+            if (!segmentPath(segments.size()).delete()) {
+                throw new IOException("Segment " + segments.size() + " of " + path + " could not be deleted.");
+            }
+        }
+
+        segment(count - 1);
+
+        for (int i = 0; i < count; i++) {
+            Segment segment = segments.get(i);
+            segment.mapped = null;
+            segment.file.setLength(i < count - 1 ? SEGMENT_SIZE : length - i * SEGMENT_SIZE);
+        }
+
+        map();
+    }
+
+    /**
+     * Fills a range of the file with zeros without changing its length.
+     *
+     * @param from Start of the range.
+     * @param to End of the range, exclusive.
+     * @throws IOException if the zeros could not be written.
+     */
+    @Override
+    public synchronized void zero(long from, long to) throws IOException {
+        StorageBackend.super.zero(from, to);
+    }
+
+    /**
+     * Forces every segment to the storage device.
+     *
+     * @throws IOException if a segment could not be forced.
+     */
+    @Override
+    public synchronized void sync() throws IOException {
+        checkOpen();
+
+        for (Segment segment : segments) {
+            if (segment.mapped != null) {
+                segment.mapped.force();
+            }
+            segment.channel.force(false);
+        }
+    }
+
+    /**
+     * @return true if the segments are memory mapped.
+     */
+    @Override
+    public boolean isMemoryMapped() {
+        return MEMORY_MAPPED;
+    }
+
+    /**
+     * @return the number of segment files.
+     */
+    @Override
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Closes every segment.
+     *
+     * @throws IOException if a segment could not be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+
+        for (Segment segment : segments) {
+            segment.mapped = null;
+            segment.file.close();
+        }
+    }
+
+    /**
+     * @return true if the file has been closed.
+     */
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Gets a segment, creating it and every segment before it if they don't exist. Segments before a new segment are extended to the full
+     * segment size so the file has no holes.
+     *
+     * @param index The segment number.
+     * @return The segment.
+     * @throws IOException if a segment could not be created.
+     */
+    private Segment segment(int index) throws IOException {
+        while (segments.size() <= index) {
+            Segment previous = segments.get(segments.size() - 1);
+
+            if (previous.file.length() < SEGMENT_SIZE) {
+                previous.mapped = null;
+                previous.file.setLength(SEGMENT_SIZE);
+                mapSegment(previous);
+            }
+            segments.add(new Segment(segmentPath(segments.size())));
+        }
+        return segments.get(index);
+    }
+
+    /**
+     * Gets the segment number that holds a position.
+     *
+     * @param position Position in the file.
+     * @return The segment number.
+     */
+    private int segmentIndex(long position) {
+        long index = position / SEGMENT_SIZE;
+
+        if (index > Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException("SegmentedFile: Position " + position + " is past the last possible segment!");
+        }
+        return (int) index;
+    }
+
+    /**
+     * Gets the path of a segment file.
+     *
+     * @param index The segment number.
+     * @return The path. The first segment is the file itself.
+     */
+    private File segmentPath(int index) {
+        return segmentPath(path, index);
+    }
+
+    /**
+     * Gets the path of a segment file.
+     *
+     * @param path The path of the first segment.
+     * @param index The segment number.
+     * @return The path. The first segment is the file itself.
+     */
+    static File segmentPath(File path, int index) {
+        return index == 0 ? path : new File(path.getPath() + "." + index);
+    }
+
+    /**
+     * Counts the segment files of a file that exist on disk.
+     *
+     * @param path The path of the first segment.
+     * @return The number of segments. 0 if the file doesn't exist.
+     */
+    static int countSegments(File path) {
+        int count = 0;
+
+        while (segmentPath(path, count).exists()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Deletes every segment of a file from the given segment on.
+     *
+     * @param path The path of the first segment.
+     * @param from The first segment to delete.
+     * @throws IOException if a segment could not be deleted.
+     */
+    static void deleteSegments(File path, int from) throws IOException {
+        for (int i = from; segmentPath(path, i).exists(); i++) {
+            Files.delete(segmentPath(path, i).toPath());
+        }
+    }
+
+    /**
+     * Moves every segment of a file over the matching segment of another file. Safe to repeat if a previous move was interrupted, as long
+     * as nothing was written to the first file since.
+     *
+     * @param from The path of the first segment to move.
+     * @param to The path of the first segment to replace.
+     * @throws IOException if a segment could not be moved.
+     */
+    static void moveSegments(File from, File to) throws IOException {
+        for (int i = 0; segmentPath(from, i).exists() || segmentPath(to, i).exists(); i++) {
+            if (segmentPath(from, i).exists()) {
+                Files.move(segmentPath(from, i).toPath(), segmentPath(to, i).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Maps every segment into memory if the file is memory mapped.
+     *
+     * @throws IOException if a segment could not be mapped.
+     */
+    private void map() throws IOException {
+        for (Segment segment : segments) {
+            mapSegment(segment);
+        }
+    }
+
+    /**
+     * Maps the current length of a segment into memory if the file is memory mapped.
+     *
+     * @param segment The segment to map.
+     * @throws IOException if the segment could not be mapped.
+     */
+    private void mapSegment(Segment segment) throws IOException {
+        if (!MEMORY_MAPPED) {
+            return;
+        }
+
+        long size = segment.channel.size();
+
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Segments larger than 2 GB can't be memory mapped! Use a smaller segment size.");
+        }
+        segment.mapped = segment.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Checks that the file hasn't been closed.
+     *
+     * @throws ClosedChannelException if it has been closed.
+     */
+    private void checkOpen() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package database;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Where a DataSaver keeps its bytes. Every backend stores the same bytes at the same positions, so a table has exactly the same layout
+ * whichever backend holds it, and backends can be swapped to find the fastest one for a machine. Only positional reads and writes, length,
+ * sync and close need to be implemented. Reading and writing bytes, integers and Strings are built on top of them.
+ *
+ * @author Jiyansh Agarwal
+ */
+public interface StorageBackend extends AutoCloseable {
+
+    /**
+     * Opens the backend the options ask for, creating its file if it doesn't already exist.
+     *
+     * @param path The file to store data in. Not used by backends that only live in memory.
+     * @param options How the data is stored.
+     * @return The open backend.
+     * @throws IOException if the file could not be opened.
+     */
+    static StorageBackend open(File path, StorageOptions options) throws IOException {
+        long segmentSize = options.getSegmentSize() == 0 ? Long.MAX_VALUE : options.getSegmentSize();
+
+        switch (options.getStorageType()) {
+            case RANDOM_ACCESS_FILE:
+                return new RandomAccessFileStorage(path);
+            case MEMORY_MAPPED:
+                return new SegmentedFile(path, segmentSize, true);
+            case HEAP:
+                return new MemoryStorage(false);
+            case OFF_HEAP:
+                return new MemoryStorage(true);
+            default:
+                return new SegmentedFile(path, segmentSize, false);
+        }
+    }
+
+    /**
+     * Reads bytes into the buffer until it is full or the end of the storage is reached.
+     *
+     * @param buffer The buffer to fill.
+     * @param position Position to start reading from.
+     * @return The number of bytes read.
+     * @throws IOException if the storage could not be read.
+     */
+    int read(ByteBuffer buffer, long position) throws IOException;
+
+    /**
+     * Writes all the remaining bytes in the buffer, growing the storage if needed.
+     *
+     * @param buffer The data to write.
+     * @param position Position to start writing from.
+     * @throws IOException if the data could not be written.
+     */
+    void write(ByteBuffer buffer, long position) throws IOException;
+
+    /**
+     * @return the length of the storage in bytes.
+     * @throws IOException if the length could not be read.
+     */
+    long length() throws IOException;
+
+    /**
+     * Sets the length of the storage. If new length is less than previous length, data is truncated. New bytes read as zeros.
+     *
+     * @param length The new length in bytes.
+     * @throws IOException if the length could not be changed.
+     */
+    void setLength(long length) throws IOException;
+
+    /**
+     * Forces everything written so far to the storage device. Does nothing for storage that only lives in memory.
+     *
+     * @throws IOException if the data could not be forced.
+     */
+    void sync() throws IOException;
+
+    /**
+     * Releases the storage. Any call made after it is closed will fail.
+     *
+     * @throws IOException if the storage could not be closed.
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * @return true if the storage has been closed.
+     */
+    boolean isClosed();
+
+    /**
+     * Fills the buffer with bytes from the storage.
+     *
+     * @param buffer The buffer to fill.
+     * @param position Position to start reading from.
+     * @throws IOException if the end of the storage is reached before the buffer is full.
+     */
+    default void readFully(ByteBuffer buffer, long position) throws IOException {
+        read(buffer, position);
+
+        if (buffer.hasRemaining()) {
+            throw new EOFException();
+        }
+    }
+
+    /**
+     * Reads <code>length</code> number of bytes.
+     *
+     * @param position Position to start reading from.
+     * @param length How many bytes to read.
+     * @return The bytes.
+     * @throws IOException if the end of the storage is reached first.
+     */
+    default byte[] readBytes(long position, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        readFully(ByteBuffer.wrap(bytes), position);
+        return bytes;
+    }
+
+    /**
+     * Writes every byte in the array.
+     *
+     * @param bytes The data to write.
+     * @param position Position to start writing from.
+     * @throws IOException if the data could not be written.
+     */
+    default void writeBytes(byte[] bytes, long position) throws IOException {
+        write(ByteBuffer.wrap(bytes), position);
+    }
+
+    /**
+     * Reads an integer (i.e. 4 bytes).
+     *
+     * @param position Position to start reading from.
+     * @return The integer.
+     * @throws IOException if the end of the storage is reached first.
+     */
+    default int readInt(long position) throws IOException {
+        ByteBuffer integer = ByteBuffer.allocate(4);
+        readFully(integer, position);
+        return integer.getInt(0);
+    }
+
+    /**
+     * Writes an integer (i.e. 4 bytes).
+     *
+     * @param num The integer to write.
+     * @param position Position to start writing from.
+     * @throws IOException if the data could not be written.
+     */
+    default void writeInt(int num, long position) throws IOException {
+        write(ByteBuffer.allocate(4).putInt(0, num), position);
+    }
+
+    /**
+     * Reads a String stored with its two byte length in modified UTF-8.
+     *
+     * @param position Position of the length.
+     * @return The String.
+     * @throws IOException if the end of the storage is reached first or the bytes are not valid text.
+     */
+    default String readUTF(long position) throws IOException {
+        ByteBuffer encodedText = RecordCodec.scratch(2);
+        readFully(encodedText, position);
+
+        int length = 2 + Short.toUnsignedInt(encodedText.getShort(0));
+        encodedText = RecordCodec.scratch(length).putShort(0, (short) (length - 2));
+        readFully(encodedText.position(2), position + 2);
+
+        return RecordCodec.decode(encodedText, 0);
+    }
+
+    /**
+     * Writes a String with its two byte length in modified UTF-8.
+     *
+     * @param text The String to write.
+     * @param position Position to start writing from.
+     * @return The number of bytes written, including the two byte length.
+     * @throws IOException if the data could not be written or the text is longer than 65535 bytes once encoded.
+     */
+    default int writeUTF(String text, long position) throws IOException {
+        ByteBuffer encodedText = RecordCodec.scratch(RecordCodec.slotLength(text));
+        int length = RecordCodec.encode(text, encodedText, 0);
+        write(encodedText, position);
+        return length;
+    }
+
+    /**
+     * Fills a range of the storage with zeros without changing its length.
+     *
+     * @param from Start of the range.
+     * @param to End of the range, exclusive.
+     * @throws IOException if the zeros could not be written.
+     */
+    default void zero(long from, long to) throws IOException {
+        byte[] zeros = new byte[8192];
+
+        while (from < to) {
+            int length = (int) Math.min(zeros.length, to - from);
+            write(ByteBuffer.wrap(zeros, 0, length), from);
+            from += length;
+        }
+    }
+
+    /**
+     * @return true if the storage is a memory mapped file, which can't be truncated while it is mapped.
+     */
+    default boolean isMemoryMapped() {
+        return false;
+    }
+
+    /**
+     * @return the number of files the storage is split across. 0 for storage that only lives in memory.
+     */
+    default int getSegmentCount() {
+        return 1;
+    }
+}
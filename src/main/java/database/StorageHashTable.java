@@ -2,45 +2,129 @@ package database;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
+ * Hash table stored in fixed size blocks in a file, or in memory in the same layout. Lookups may run at the same time as each other, while changes to the table run one at a
+ * time. Every operation also has an asynchronous version that runs on the DataSaver I/O threads. Blocks carry a CRC32C checksum unless the
+ * options turn checksums off, and the format the blocks are stored in is recorded in a <code>.meta</code> file next to the table.
+ * <p>
+ * Once adding an entry would take the table past the load factor in its options, it grows into files with twice as many blocks. The old files
+ * are renamed out of the way and a few of their blocks are moved into the new ones with each change, while lookups check both, so growing
+ * never stops the table for a full rebuild. The move is recorded in the <code>.meta</code> file and carries on after the table is reopened.
+ * <p>
+ * A table can keep a Bloom filter of its keys in a <code>.bloom</code> file, so lookups for keys that were never added, like the check that
+ * a new key isn't taken, return without probing.
+ * <p>
+ * With linear probing a deleted entry leaves a marker that later lookups have to step over. <code>vacuum</code> removes the markers a few
+ * blocks at a time by moving the entries after them back, and <code>startVacuum</code> keeps doing so in the background at a limited rate.
+ * <p>
+ * <code>addEntries</code> loads a batch of entries in one pass through the files instead of one write per entry, either into the table's
+ * files or into fresh files that then replace them.
  *
  * @author Jiyansh Agarwal
  */
-public class StorageHashTable {
+public class StorageHashTable implements AutoCloseable {
 
-    final public int NUMBER_OF_BLOCKS;
     final public int MAX_KEY_LENGTH;
     final public int[] RECORD_SIZES;
+    final public Schema SCHEMA;
 
-    final static private int DELETED = Integer.MAX_VALUE;           //Integer.MAX_VALUE is a flag for a deleted element.
+    final static private int VERIFY_SAMPLE_INTERVAL = 16;
+    final static private int MOVE_BLOCKS = 8;                       //Blocks moved into the grown files with each change while the table grows.
+    final static private String OLD = ".old";                       //Added to the names of the files a growing table is moving out of.
+    final static private String LOAD = ".load";                     //Added to the names of the files a bulk load is written into.
+    final static private long VACUUM_PERIOD = 100;                  //Milliseconds between the steps of a background vacuum.
     final private int BLOCK_SIZE;
-    final private DataSaver SAVE;
-    final private DataSaver KEY_SAVE;
-    private int numOfEntries = 0;
-    private String[] keys;
+    final private BlockLayout LAYOUT;
+    final private String TABLE_PATH;
+    final private String KEY_PATH;
+    final private StorageOptions FILE_OPTIONS;
+    final private double LOAD_FACTOR;
+    final private ProbingScheme PROBING;
+    final private TableMetadata META;
+    final private TableSnapshot SNAPSHOT;                           //Null for a table kept in memory.
+    final private BloomFilter BLOOM;                                //Null unless the options ask for one.
+    final private Durability DURABILITY;
+    final private VerifyMode VERIFY_MODE;
+    final private IOStats STATS;                                    //Shared by the table and key files.
+    final private AtomicInteger blockReads = new AtomicInteger();
+    final private AtomicLong checksumFailures = new AtomicLong();
+    final private ByteBuffer blockBuffer;                           //Reused for every block write.
+    final private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private BlockFile blocks;
+    private BlockFile moving;                                       //The files being moved out of while the table grows. Null otherwise.
+    private int moveCursor;                                         //The next block of the old files to move.
+    private boolean snapshotCurrent = false;                        //True until the first change after the snapshot was loaded or written.
+    private int vacuumCursor = 1;                                   //The next block a vacuum looks at.
+    private volatile ScheduledFuture<?> vacuumTask;                 //Null unless the table is vacuumed in the background.
+
+    private static ScheduledExecutorService vacuumer;
 
     /**
      * Takes amount of entries and entry length to create a file of that length with blocks of data representing each entry.
      *
      * @param filePath Directory to store the hash table.
      * @param fileName Name of file. Also used for the key file.
-     * @param numOfEntries The maximum number of entries allowed in the file.
+     * @param numOfEntries The number of blocks the table starts with. A table that has grown keeps its larger size.
      * @param maxKeyLength The maximum length that a key can be.
      * @param numOfRecords The number of records stored per entry.
      * @param recordLengths An array of the lengths of each record in the order they will be stored.
      */
     public StorageHashTable(String filePath, String fileName, int numOfEntries, int maxKeyLength, int numOfRecords, int[] recordLengths) {
+        this(filePath, fileName, numOfEntries, maxKeyLength, numOfRecords, recordLengths, new StorageOptions());
+    }
+
+    /**
+     * Takes amount of entries and entry length to create a file of that length with blocks of data representing each entry.
+     *
+     * @param filePath Directory to store the hash table.
+     * @param fileName Name of file. Also used for the key file.
+     * @param numOfEntries The number of blocks the table starts with. A table that has grown keeps its larger size.
+     * @param maxKeyLength The maximum length that a key can be.
+     * @param numOfRecords The number of records stored per entry.
+     * @param recordLengths An array of the lengths of each record in the order they will be stored.
+     * @param options How the table and key files are stored.
+     */
+    public StorageHashTable(String filePath, String fileName, int numOfEntries, int maxKeyLength, int numOfRecords, int[] recordLengths,
+            StorageOptions options) {
+        this(filePath, fileName, numOfEntries, maxKeyLength, stringSchema(numOfRecords, recordLengths), options);
+    }
+
+    /**
+     * Takes amount of entries and a schema of typed columns to create a file with blocks of data representing each entry.
+     *
+     * @param filePath Directory to store the hash table.
+     * @param fileName Name of file. Also used for the key file.
+     * @param numOfEntries The number of blocks the table starts with. A table that has grown keeps its larger size.
+     * @param maxKeyLength The maximum length that a key can be.
+     * @param schema The columns of each entry's records in the order they will be stored.
+     * @param options How the table and key files are stored.
+     */
+    public StorageHashTable(String filePath, String fileName, int numOfEntries, int maxKeyLength, Schema schema, StorageOptions options) {
         String error = "StorageHashTable Constructor: ";
 
         //-------------------------------[Input Validation]------------------------    
         try {
-            if (numOfEntries <= 0 || numOfRecords <= 0 || maxKeyLength <= 0) {
+            if (numOfEntries <= 0 || schema.getColumnCount() <= 0 || maxKeyLength <= 0) {
                 throw new IOException(error + "All input lengths must be greater than 0!");
             }
-            if (numOfRecords != recordLengths.length) {
-                throw new IOException(error + "Each record must have a length given.");
-            }
             if (numOfEntries > Integer.MAX_VALUE - 1) {
                 throw new IndexOutOfBoundsException(error + "Too many entries!");
             }
@@ -49,23 +133,53 @@ public class StorageHashTable {
         }
         //-------------------------------------------------------------------------
 
-        int blockLength = 0;
+        this.MAX_KEY_LENGTH = maxKeyLength + 2;                           //Adds two byte space for length information.
+        SCHEMA = schema.copy();
+        RECORD_SIZES = new int[SCHEMA.getColumnCount()];
 
-        //Allows two byte space for storing length information and counts total bytes needed.
-        for (int i = 0; i < recordLengths.length; i++) {
-            recordLengths[i] = recordLengths[i] + 2;
-            blockLength += recordLengths[i];
+        for (int i = 0; i < RECORD_SIZES.length; i++) {
+            RECORD_SIZES[i] = SCHEMA.slotSize(i);
         }
 
-        NUMBER_OF_BLOCKS = numOfEntries;
-        this.MAX_KEY_LENGTH = maxKeyLength + 2;                           //Adds two byte space for length information.
-        BLOCK_SIZE = blockLength + this.MAX_KEY_LENGTH + 4;               //Adds space needed to accomadate hash code's extra four byte space.
-        RECORD_SIZES = recordLengths.clone();
+        String tablePath = filePath + File.separator + fileName;
+        String basePath = filePath + File.separator + fileName.substring(0, fileName.indexOf('.'));
+        BlockLayout layout;
+
+        //The format must be settled before the table file is opened, since opening it may migrate it.
+        META = new TableMetadata(basePath + ".meta", options);
+        int capacity = META.getCapacity() > 0 ? META.getCapacity() : numOfEntries;
 
-        SAVE = new DataSaver(filePath + File.separator + fileName, NUMBER_OF_BLOCKS * BLOCK_SIZE);
-        KEY_SAVE = new DataSaver(filePath + File.separator + fileName.substring(0, fileName.indexOf('.')) + ".keys", NUMBER_OF_BLOCKS * this.MAX_KEY_LENGTH);
+        try {
+            layout = META.open(tablePath, capacity, this.MAX_KEY_LENGTH, SCHEMA, options);
+        } catch (IOException e) {
+            System.out.println(error + e);
+            layout = BlockLayout.forOptions(options, this.MAX_KEY_LENGTH, SCHEMA);
+        }
 
-        loadKeys();
+        LAYOUT = layout;
+        checksumFailures.addAndGet(META.getChecksumFailures());
+        BLOCK_SIZE = LAYOUT.BLOCK_SIZE;                                   //Header, key and every record.
+
+        STATS = options.getStats() != null ? options.getStats() : new IOStats();
+        FILE_OPTIONS = options.copy().stats(STATS);
+        TABLE_PATH = tablePath;
+        KEY_PATH = basePath + ".keys";
+        LOAD_FACTOR = options.getLoadFactor();
+        PROBING = options.getProbing();
+        DURABILITY = options.getDurability();
+        VERIFY_MODE = options.getVerifyMode();
+        blockBuffer = ByteBuffer.allocate(BLOCK_SIZE);
+        SNAPSHOT = options.isInMemory() ? null : new TableSnapshot(basePath + ".ckpt");
+        BLOOM = options.getBloomFalsePositiveRate() == 0 ? null
+                : new BloomFilter(options.isInMemory() ? null : basePath + ".bloom", options.getBloomFalsePositiveRate());
+
+        openBlocks(capacity, options.isInMemory());
+
+        //A saved filter is only trusted if the table started from the snapshot it was saved with.
+        if (BLOOM != null && !(snapshotCurrent && BLOOM.load(getCapacity(), SNAPSHOT.getChecksum()))) {
+            rebuildBloomFilter();
+        }
+        STATS.register("StorageHashTable", new File(tablePath).getAbsolutePath());
     }
 
     /**
@@ -76,52 +190,150 @@ public class StorageHashTable {
      * @return The location where entry is stored. Returns -1 if no location is found or if entry is a duplicate.
      */
     public int addEntry(String key, String[] records) {
-        String error = "StorageHashTable addEntry: ";
+        return addEntry(key, records, DURABILITY);
+    }
 
-        //-------------------------------[Input Validation]------------------------
+    /**
+     * Takes a key and hashes it to find which block to store entry in. Writes the records to that block along with the hash.
+     *
+     * @param key The string used to find the storage location. Note: Duplicate keys not allowed..
+     * @param records The records to store. These must match the size parameters defined in the constructor in both length and number.
+     * @param durability How durable the entry must be when this returns.
+     * @return The location where entry is stored. Returns -1 if no location is found or if entry is a duplicate.
+     */
+    public int addEntry(String key, String[] records, Durability durability) {
+        lock.writeLock().lock();
         try {
-            if (key == null || key.length() == 0 || records.length == 0) {
-                throw new IOException("Input lengths must be greater than 0!");
-            }
-            if (key.length() > MAX_KEY_LENGTH - 2) {
-                throw new IndexOutOfBoundsException(error + "Key length cannot exceed max key length!");
-            }
-            if (this.containsKey(key)) {
-                throw new IOException("Duplicate keys not allowed. All keys must be unique");
-            }
-            if (records.length != RECORD_SIZES.length) {
-                throw new IOException(error + "Amount of records in array does not match previously allocated amount!");
-            }
+            String error = "StorageHashTable addEntry: ";
+
+            //-------------------------------[Input Validation]------------------------
+            try {
+                if (durability == null) {
+                    throw new IOException("Durability cannot be null!");
+                }
+                if (key == null || key.length() == 0 || records.length == 0) {
+                    throw new IOException("Input lengths must be greater than 0!");
+                }
+                if (RecordCodec.slotLength(key) > MAX_KEY_LENGTH) {
+                    throw new IndexOutOfBoundsException(error + "Key length cannot exceed max key length!");
+                }
+                if (this.containsKey(key)) {
+                    throw new IOException("Duplicate keys not allowed. All keys must be unique");
+                }
+                if (records.length != RECORD_SIZES.length) {
+                    throw new IOException(error + "Amount of records in array does not match previously allocated amount!");
+                }
 
-            for (int i = 0; i < records.length; i++) {
-                if (records[i].length() + 2 > RECORD_SIZES[i]) {
-                    throw new IOException("Record " + i + "in array (records[" + i + "] = " + records[i] + ") is too long!");
+                for (int i = 0; i < records.length; i++) {
+                    if (!LAYOUT.SCHEMA.accepts(i, records[i])) {
+                        throw new IOException("Record " + i + "in array (records[" + i + "] = " + records[i] + ") doesn't fit its column!");
+                    }
                 }
+            } catch (IOException e) {
+                System.out.println(error + e);
+                return -1;
             }
-        } catch (IOException e) {
-            System.out.println(error + e);
-            return -1;
+            //-------------------------------------------------------------------------
+
+            growIfNeeded();
+            moveBlocks();
+
+            return writeData(-1, key, records, durability);
+        } finally {
+            lock.writeLock().unlock();
         }
-        //-------------------------------------------------------------------------
+    }
+
+    /**
+     * Adds a batch of entries in one pass through the files, for loading many entries at once. See
+     * <code>addEntries(entries, rebuild)</code>. The entries are written into the table's own files when they fit.
+     *
+     * @param entries The records to store for each key. Note: Keys already in the table are not allowed.
+     * @return The number of entries added. Returns -1 if an entry is refused or a write fails.
+     */
+    public int addEntries(Map<String, String[]> entries) {
+        return addEntries(entries, false);
+    }
+
+    /**
+     * Adds a batch of entries in one pass through the files, for loading many entries at once. Every entry is checked first the way
+     * <code>addEntry</code> checks it, and nothing is added if any is refused. The blocks are then placed in memory and written in order of
+     * position in a few large writes with one commit at the end, instead of a probe, two writes and a commit for each entry.
+     * <p>
+     * With <code>rebuild</code> set, the table's entries and the new ones are written into fresh files that then replace the table's files,
+     * so a crash leaves the table either as it was or fully loaded, and no deleted markers are left. The same happens when the table is
+     * growing, or when the entries would take it past its load factor, in which case the fresh files have as many blocks as growing would
+     * give it. Every entry being written is held in memory until the write is done. Nothing is added if one of the table's blocks fails its
+     * checksum while it is copied.
+     *
+     * @param entries The records to store for each key. Note: Keys already in the table are not allowed.
+     * @param rebuild Set to true to write into fresh files that replace the table's files.
+     * @return The number of entries added. Returns -1 if an entry is refused or a write fails.
+     */
+    public int addEntries(Map<String, String[]> entries, boolean rebuild) {
+        lock.writeLock().lock();
+        try {
+            String error = "StorageHashTable addEntries: ";
+            int capacity = blocks.NUMBER_OF_BLOCKS;
+
+            //-------------------------------[Input Validation]------------------------
+            try {
+                if (entries == null) {
+                    throw new IOException("Entries cannot be null!");
+                }
+
+                for (Map.Entry<String, String[]> entry : entries.entrySet()) {
+                    String key = entry.getKey();
+                    String[] records = entry.getValue();
+
+                    if (key == null || key.length() == 0 || records == null || records.length == 0) {
+                        throw new IOException("Input lengths must be greater than 0!");
+                    }
+                    if (RecordCodec.slotLength(key) > MAX_KEY_LENGTH) {
+                        throw new IndexOutOfBoundsException(error + "Key length cannot exceed max key length!");
+                    }
+                    if (this.containsKey(key)) {
+                        throw new IOException("Duplicate keys not allowed. " + key + " is already in the table");
+                    }
+                    if (records.length != RECORD_SIZES.length) {
+                        throw new IOException(error + "Amount of records for " + key + " does not match previously allocated amount!");
+                    }
+
+                    for (int i = 0; i < records.length; i++) {
+                        if (!LAYOUT.SCHEMA.accepts(i, records[i])) {
+                            throw new IOException("Record " + i + " of " + key + " (" + records[i] + ") doesn't fit its column!");
+                        }
+                    }
+                }
 
-        int block = this.getHashCode(key);
-        int blockProbe = block;
+                long total = (long) size() + entries.size();
 
-        do {
-            if (blockIsEmpty(blockProbe) || blockIsDeleted(blockProbe)) {
-                if (writeData(blockProbe, key, records, true)) {
-                    return blockProbe;
+                while (LOAD_FACTOR != 0 && total > LOAD_FACTOR * capacity && capacity < Integer.MAX_VALUE - 1) {
+                    capacity = (int) Math.min(2L * capacity, Integer.MAX_VALUE - 1);
+                }
+                if (total > capacity) {
+                    throw new IOException("The table doesn't have enough blocks for " + entries.size() + " more entries!");
                 }
+            } catch (IOException e) {
+                System.out.println(error + e);
                 return -1;
+            }
+            //-------------------------------------------------------------------------
 
-            } else if (blockProbe == NUMBER_OF_BLOCKS) {
-                blockProbe = 1;                                         //If at the end of file, start at the top again.
-            } else {
-                blockProbe++;
+            if (entries.isEmpty()) {
+                return 0;
+            }
+            if (!invalidateSnapshot()) {
+                return -1;
             }
-        } while (blockProbe != block);                                  //Keep searching for empty block unitl back to the start.
 
-        return -1;
+            boolean fresh = rebuild || moving != null || capacity != blocks.NUMBER_OF_BLOCKS;
+            boolean loaded = fresh ? loadFresh(entries, capacity) : loadInPlace(entries);
+
+            return loaded && commit(DURABILITY) ? entries.size() : -1;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -131,356 +343,1483 @@ public class StorageHashTable {
      * @return The data for that key. Null if key not found.
      */
     public String[] readEntry(String key) {
-        String error = "StorageHashTable readEntry: ";
+        lock.readLock().lock();
+        try {
+            String error = "StorageHashTable readEntry: ";
 
-        //-------------------------------[Input Validation]------------------------
+            //-------------------------------[Input Validation]------------------------
+            try {
+                if (key == null || key.length() == 0) {
+                    throw new IOException(error + "Key length must be greater than 0!");
+                }
+                if (RecordCodec.slotLength(key) > MAX_KEY_LENGTH) {
+                    throw new IndexOutOfBoundsException(error + "Key length cannot exceed max key length!");
+                }
+            } catch (IOException e) {
+                System.out.println(e);
+                return null;
+            }
+            //-------------------------------------------------------------------------
+
+            return readData(readBlock(key));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the data for several keys at once. Every key is looked up in the index first, then the blocks are read in the order they are
+     * stored in the file, so the whole batch is read in one sweep instead of one random read per key.
+     *
+     * @param keys The keys used to find data.
+     * @return The data for each key that was found. Keys that are null, too long or not in the table are left out. Null if keys is null.
+     */
+    public Map<String, String[]> readEntries(Collection<String> keys) {
+        lock.readLock().lock();
         try {
-            if (key == null || key.length() == 0) {
-                throw new IOException(error + "Key length must be greater than 0!");
+            String error = "StorageHashTable readEntries: ";
+
+            //-------------------------------[Input Validation]------------------------
+            try {
+                if (keys == null) {
+                    throw new IOException(error + "Keys cannot be null!");
+                }
+            } catch (IOException e) {
+                System.out.println(e);
+                return null;
             }
-            if (key.length() > MAX_KEY_LENGTH - 2) {
-                throw new IndexOutOfBoundsException(error + "Key length cannot exceed max key length!");
+            //-------------------------------------------------------------------------
+
+            Map<String, String[]> entries = new HashMap<>();
+            List<String> found = new ArrayList<>();
+            List<String> foundMoving = new ArrayList<>();
+            List<Integer> blockNums = new ArrayList<>();
+            List<Integer> movingBlockNums = new ArrayList<>();
+
+            for (String key : new LinkedHashSet<>(keys)) {
+                if (key == null || key.length() == 0 || RecordCodec.slotLength(key) > MAX_KEY_LENGTH || isDefinitelyAbsent(key)) {
+                    continue;
+                }
+
+                int blockNum = blocks.find(key, STATS);
+
+                if (blockNum != -1) {
+                    found.add(key);
+                    blockNums.add(blockNum);
+                } else if (moving != null && (blockNum = moving.find(key, STATS)) != -1) {
+                    foundMoving.add(key);
+                    movingBlockNums.add(blockNum);
+                }
+            }
+
+            readSorted(blocks, found, blockNums, entries);
+            if (moving != null) {
+                readSorted(moving, foundMoving, movingBlockNums, entries);
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads one record of an entry as a number, straight from its binary field without decoding the rest of the entry. A STRING record is
+     * parsed instead.
+     *
+     * @param key The key used to find the entry.
+     * @param column The record's column, starting at 0.
+     * @return The number. A BOOLEAN is 1 or 0. -1 if the key isn't found or the record isn't a number.
+     */
+    public int getInt(String key, int column) {
+        lock.readLock().lock();
+        try {
+            ByteBuffer block = readField(key, column, "StorageHashTable getInt: ");
+
+            if (block != null) {
+                return LAYOUT.decodeInt(block, column);
             }
         } catch (IOException e) {
-            System.out.println(e);
+            System.out.println("StorageHashTable getInt: " + e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return -1;
+    }
+
+    /**
+     * Reads one record of an entry as a number. See <code>getInt</code>.
+     *
+     * @param key The key used to find the entry.
+     * @param column The record's column, starting at 0.
+     * @return The number. -1 if the key isn't found or the record isn't a number.
+     */
+    public short getShort(String key, int column) {
+        return (short) getInt(key, column);
+    }
+
+    /**
+     * Reads one record of an entry as a flag, straight from its binary field without decoding the rest of the entry.
+     *
+     * @param key The key used to find the entry.
+     * @param column The record's column, starting at 0.
+     * @return The flag. False if the key isn't found.
+     */
+    public boolean getBoolean(String key, int column) {
+        lock.readLock().lock();
+        try {
+            ByteBuffer block = readField(key, column, "StorageHashTable getBoolean: ");
+
+            if (block != null) {
+                return LAYOUT.decodeInt(block, column) == 1;
+            }
+        } catch (IOException e) {
+            System.out.println("StorageHashTable getBoolean: " + e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return false;
+    }
+
+    /**
+     * Reads one record of an entry as text without decoding the rest of the entry.
+     *
+     * @param key The key used to find the entry.
+     * @param column The record's column, starting at 0.
+     * @return The record. Null if the key isn't found.
+     */
+    public String getRecord(String key, int column) {
+        lock.readLock().lock();
+        try {
+            ByteBuffer block = readField(key, column, "StorageHashTable getRecord: ");
+
+            if (block != null) {
+                return LAYOUT.decodeRecord(block, column);
+            }
+        } catch (IOException e) {
+            System.out.println("StorageHashTable getRecord: " + e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return null;
+    }
+
+    /**
+     * Replaces data in the block that matches the given key with the given data.
+     *
+     * @param key The key to used to find entry.
+     * @param records The data to replace existing entry with.
+     * @return The previous data for that key. Null if key not found.
+     */
+    public String[] changeRecords(String key, String[] records) {
+        return changeRecords(key, records, DURABILITY);
+    }
+
+    /**
+     * Replaces data in the block that matches the given key with the given data.
+     *
+     * @param key The key to used to find entry.
+     * @param records The data to replace existing entry with.
+     * @param durability How durable the change must be when this returns.
+     * @return The previous data for that key. Null if key not found.
+     */
+    public String[] changeRecords(String key, String[] records, Durability durability) {
+        lock.writeLock().lock();
+        try {
+            String error = "StorageHashTable replaceEntry: ";
+
+            //-------------------------------[Input Validation]------------------------
+            try {
+                if (durability == null) {
+                    throw new IOException(error + "Durability cannot be null!");
+                }
+                if (key == null || key.length() == 0 || records.length == 0) {
+                    throw new IOException(error + "Input lengths must be greater than 0!");
+                }
+                if (RecordCodec.slotLength(key) > MAX_KEY_LENGTH) {
+                    throw new IndexOutOfBoundsException(error + "Key length cannot exceed max key length!");
+                }
+                if (records.length != RECORD_SIZES.length) {
+                    throw new IOException(error + "Amount of records in array does not match previously allocated amount!");
+                }
+
+                for (int i = 0; i < records.length; i++) {
+                    if (!LAYOUT.SCHEMA.accepts(i, records[i])) {
+                        throw new IOException(error + "Record " + i + "in array (records[" + i + "] = " + records[i] + ") doesn't fit its column!");
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println(e);
+                return null;
+            }
+            //-------------------------------------------------------------------------
+
+            moveBlocks();
+
+            int blockNum = findBlock(key);
+
+            if (blockNum == -1) {
+                return null;
+            }
+
+            String[] oldData = readData(readBlock(blocks, blockNum));
+
+            if (writeData(blockNum, key, records, durability) != -1) {
+                return oldData;
+            }
             return null;
+        } finally {
+            lock.writeLock().unlock();
         }
-        //-------------------------------------------------------------------------
+    }
+
+    /**
+     * Deletes an entry that matches the key.
+     *
+     * @param key The key used to find entry to delete.
+     * @return The deleted data.
+     */
+    public String[] deleteEntry(String key) {
+        return deleteEntry(key, DURABILITY);
+    }
 
-        int block = this.getHashCode(key);
-        int blockProbe = block;
+    /**
+     * Deletes an entry that matches the key.
+     *
+     * @param key The key used to find entry to delete.
+     * @param durability How durable the deletion must be when this returns.
+     * @return The deleted data.
+     */
+    public String[] deleteEntry(String key, Durability durability) {
+        lock.writeLock().lock();
+        try {
+            String error = "StorageHashTable deleteEntry: ";
 
-        do {
-            if (blockIsEmpty(blockProbe)) {
+            //-------------------------------[Input Validation]------------------------
+            try {
+                if (durability == null) {
+                    throw new IOException(error + "Durability cannot be null!");
+                }
+                if (key == null || key.length() == 0) {
+                    throw new IOException(error + "Key length must be greater than 0!");
+                }
+                if (RecordCodec.slotLength(key) > MAX_KEY_LENGTH) {
+                    throw new IndexOutOfBoundsException(error + "Key length cannot exceed max key length!");
+                }
+            } catch (IOException e) {
+                System.out.println(e);
                 return null;
-            } else if (blockIsDeleted(blockProbe)) {
-                blockProbe++;
-            } else if (getKey(blockProbe).equals(key)) {
-                return readData(blockProbe);
-            } else if (blockProbe == NUMBER_OF_BLOCKS) {
-                blockProbe = 1;                                         //If at the end of file, start at the top again.
-            } else {
-                blockProbe++;
             }
-        } while (blockProbe != block);                                  //Keep searching for requested block unitl back to the start.
+            //-------------------------------------------------------------------------
+
+            moveBlocks();
+
+            int blockNum = findBlock(key);
+
+            if (blockNum == -1) {
+                return deleteUnmoved(key, durability);
+            }
+
+            String[] data = readData(readBlock(blocks, blockNum));
+
+            if (deleteData(blockNum, key, durability)) {
+                return data;
+            }
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds an entry on an I/O thread. See <code>addEntry</code>.
+     *
+     * @param key The string used to find the storage location. Note: Duplicate keys not allowed..
+     * @param records The records to store. These must match the size parameters defined in the constructor in both length and number.
+     * @return The location where entry is stored once the entry has been added. -1 if no location is found or if entry is a duplicate.
+     */
+    public CompletableFuture<Integer> addEntryAsync(String key, String[] records) {
+        return CompletableFuture.supplyAsync(() -> addEntry(key, records), DataSaver.ioExecutor());
+    }
+
+    /**
+     * Adds a batch of entries on an I/O thread. See <code>addEntries</code>.
+     *
+     * @param entries The records to store for each key. Note: Keys already in the table are not allowed.
+     * @return The number of entries added once they have been written. -1 if an entry is refused or a write fails.
+     */
+    public CompletableFuture<Integer> addEntriesAsync(Map<String, String[]> entries) {
+        return CompletableFuture.supplyAsync(() -> addEntries(entries), DataSaver.ioExecutor());
+    }
+
+    /**
+     * Reads an entry on an I/O thread. See <code>readEntry</code>.
+     *
+     * @param key The key to used to find data.
+     * @return The data for that key once it has been read. Null if key not found.
+     */
+    public CompletableFuture<String[]> readEntryAsync(String key) {
+        return CompletableFuture.supplyAsync(() -> readEntry(key), DataSaver.ioExecutor());
+    }
+
+    /**
+     * Reads the data for several keys on an I/O thread. See <code>readEntries</code>.
+     *
+     * @param keys The keys used to find data.
+     * @return The data for each key that was found once it has all been read. Null if keys is null.
+     */
+    public CompletableFuture<Map<String, String[]>> readEntriesAsync(Collection<String> keys) {
+        return CompletableFuture.supplyAsync(() -> readEntries(keys), DataSaver.ioExecutor());
+    }
+
+    /**
+     * Replaces the data for a key on an I/O thread. See <code>changeRecords</code>.
+     *
+     * @param key The key to used to find entry.
+     * @param records The data to replace existing entry with.
+     * @return The previous data for that key once it has been replaced. Null if key not found.
+     */
+    public CompletableFuture<String[]> changeRecordsAsync(String key, String[] records) {
+        return CompletableFuture.supplyAsync(() -> changeRecords(key, records), DataSaver.ioExecutor());
+    }
+
+    /**
+     * Deletes an entry on an I/O thread. See <code>deleteEntry</code>.
+     *
+     * @param key The key used to find entry to delete.
+     * @return The deleted data once it has been deleted. Null if key not found.
+     */
+    public CompletableFuture<String[]> deleteEntryAsync(String key) {
+        return CompletableFuture.supplyAsync(() -> deleteEntry(key), DataSaver.ioExecutor());
+    }
+
+    /**
+     * Checks if a key is in the table on an I/O thread. See <code>containsKey</code>.
+     *
+     * @param key The key to find.
+     * @return True once the key is found. False if it isn't in the table.
+     */
+    public CompletableFuture<Boolean> containsKeyAsync(String key) {
+        return CompletableFuture.supplyAsync(() -> containsKey(key), DataSaver.ioExecutor());
+    }
+
+    /**
+     * Gets the key stored in a block.
+     *
+     * @param blockNum The block to read from.
+     * @return The stored key. Null if the block is empty, deleted or doesn't exist.
+     */
+    public String getKey(int blockNum) {
+        lock.readLock().lock();
+        try {
+            if (blockNum < 1 || blockNum > blocks.NUMBER_OF_BLOCKS) {
+                return null;
+            }
+            return blocks.readKey(blockNum);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the keys stored in the table.
+     *
+     * @return the keys in an array. Null for blocks that aren't in use. While the table grows it also holds the keys not yet moved.
+     */
+    public String[] getKeys() {
+        lock.readLock().lock();
+        try {
+            if (moving == null) {
+                return blocks.getKeys();
+            }
+
+            String[] newKeys = blocks.getKeys();
+            String[] oldKeys = moving.getKeys();
+            String[] allKeys = Arrays.copyOf(newKeys, newKeys.length + oldKeys.length);
+
+            System.arraycopy(oldKeys, 0, allKeys, newKeys.length, oldKeys.length);
+            return allKeys;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if a key is in the table.
+     *
+     * @param key The key to find.
+     * @return True only if key is found.
+     */
+    public boolean containsKey(String key) {
+        lock.readLock().lock();
+        try {
+            String error = "StorageHashTable containsKey: ";
+
+            //-------------------------------[Input Validation]------------------------
+            try {
+                if (key == null || key.length() == 0) {
+                    throw new IOException(error + "Key length must be greater than 0!");
+                }
+                if (RecordCodec.slotLength(key) > MAX_KEY_LENGTH) {
+                    throw new IndexOutOfBoundsException(error + "Key length cannot exceed max key length!");
+                }
+            } catch (IOException e) {
+                System.out.println(e);
+                return false;
+            }
+            //-------------------------------------------------------------------------
+
+            if (isDefinitelyAbsent(key)) {
+                return false;
+            }
+            return blocks.find(key, STATS) != -1 || (moving != null && moving.find(key, STATS) != -1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the hashCode for a specified key.
+     *
+     * @param key The key to hash.
+     * @return The hash of the key. Cannot be zero.
+     */
+    public int getHashCode(String key) {
+        String error = "StorageHashTable getHashCode: ";
+
+        //-------------------------------[Input Validation]------------------------
+        try {
+            if (key == null || key.length() == 0) {
+                throw new IOException(error + "Key length must be greater than 0!");
+            }
+            if (RecordCodec.slotLength(key) > MAX_KEY_LENGTH) {
+                throw new IndexOutOfBoundsException(error + "Key length cannot exceed max key length!");
+            }
+        } catch (IOException e) {
+            System.out.println(e);
+            return -1;
+        }
+        //-------------------------------------------------------------------------
+
+        return blocks.homeBlock(key);
+    }
+
+    /**
+     * Gets the number of entries in the file.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return blocks.size() + (moving == null ? 0 : moving.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tells if the file is empty.
+     *
+     * @return True if file is empty.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of blocks in the table. While the table grows, the number it is growing to.
+     */
+    public int getCapacity() {
+        return blocks.NUMBER_OF_BLOCKS;
+    }
+
+    /**
+     * @return how the table places entries whose block is already taken. While the table moves to another scheme, the scheme it is moving to.
+     */
+    public ProbingScheme getProbing() {
+        return blocks.PROBING;
+    }
+
+    /**
+     * @return true while the table is moving its blocks into larger files, or into another probing scheme.
+     */
+    public boolean isGrowing() {
+        return moving != null;
+    }
+
+    /**
+     * Checks that a key and records would fit in this table's slots without changing anything. Used to reject a change before it is logged.
+     *
+     * @param key The key.
+     * @param records The records. Null to only check the key.
+     * @return True if they fit.
+     */
+    boolean fits(String key, String[] records) {
+        if (key == null || key.length() == 0 || RecordCodec.slotLength(key) > MAX_KEY_LENGTH) {
+            return false;
+        }
+        if (records == null) {
+            return true;
+        }
+        if (records.length != RECORD_SIZES.length) {
+            return false;
+        }
+
+        for (int i = 0; i < records.length; i++) {
+            if (!LAYOUT.SCHEMA.accepts(i, records[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Works out how many more entries are sure to fit without changing anything. Used to reject a change before it is logged. A table that
+     * can still grow counts the blocks growing once would give it.
+     *
+     * @return The number of entries that can still be added.
+     */
+    int room() {
+        lock.readLock().lock();
+        try {
+            long capacity = blocks.NUMBER_OF_BLOCKS;
+
+            if (moving == null && LOAD_FACTOR != 0) {
+                capacity = Math.min(2L * capacity, Integer.MAX_VALUE - 1);
+            }
+            return (int) Math.max(0, capacity - size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the length of the file
+     *
+     * @return The length of the file in bytes. Returns -1 if file does not exist.
+     */
+    public long getFileLength() {
+        return blocks.getTableFile().getFileLength();
+    }
+    
+    /**
+     * @return the full file path.
+     */
+    public String getFilePath() {
+        return blocks.getTableFile().getFilePath();
+    }
+
+    /**
+     * @return the page cache in front of the table file. Null if there is no page cache.
+     */
+    public PageCache getPageCache() {
+        return blocks.getTableFile().getPageCache();
+    }
+
+    /**
+     * Clears all the data in the table.
+     *
+     */
+    public void clearFile() {
+        lock.writeLock().lock();
+        try {
+            invalidateSnapshot();
+
+            if (moving != null) {
+                moveCursor = moving.NUMBER_OF_BLOCKS + 1;               //Nothing is left to move.
+                finishGrowing();
+            }
+            blocks.clear();
+
+            if (BLOOM != null) {
+                BLOOM.reset(getCapacity());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Makes every change made so far as durable as the table's default durability asks for. Used after a batch of changes made with
+     * <code>Durability.NONE</code> so the whole batch shares one flush.
+     *
+     * @return True if operation successful.
+     */
+    public boolean commit() {
+        return commit(DURABILITY);
+    }
+
+    /**
+     * Makes every change made so far as durable as the given level asks for.
+     *
+     * @param durability How durable the changes must be when this returns.
+     * @return True if operation successful.
+     */
+    public boolean commit(Durability durability) {
+        lock.readLock().lock();
+        try {
+            return blocks.commit(durability) & (moving == null || moving.commit(durability));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forces all written data in the table and key files to the storage device.
+     *
+     * @return True if operation successful.
+     */
+    public boolean force() {
+        lock.readLock().lock();
+        try {
+            return blocks.force() & (moving == null || moving.force());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forces the table and writes a snapshot of its keys and block headers, so the next time it is opened it starts from the snapshot instead
+     * of rebuilding its keys. The snapshot stays usable until the table next changes. No snapshot is written while the table grows.
+     *
+     * @return True if operation successful.
+     */
+    public boolean checkpoint() {
+        lock.writeLock().lock();
+        try {
+            if (!force()) {
+                return false;
+            }
+            if (SNAPSHOT == null || snapshotCurrent || moving != null) {
+                return true;
+            }
+
+            snapshotCurrent = SNAPSHOT.write(LAYOUT, blocks.getKeys(), blocks.getHeaders());
+
+            if (snapshotCurrent && BLOOM != null && !BLOOM.write(SNAPSHOT.getChecksum())) {
+                System.out.println("StorageHashTable checkpoint: The Bloom filter could not be saved and will be rebuilt when the table is opened.");
+            }
+            return snapshotCurrent;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes deleted markers from the table, starting where the last vacuum stopped and going round the table at most once. Each marker is
+     * removed by moving the entries after it that probed past it back towards the blocks they hash to, so lookups for keys that aren't in
+     * the table stop sooner. A table using Robin Hood hashing has no markers to remove.
+     * <p>
+     * Markers can only be removed in place while the table has an empty block. Once entries and markers fill every block, the table is
+     * moved into fresh files with the same number of blocks instead, a few blocks at a time the way it grows. Vacuuming a table that is
+     * growing moves its blocks along, unless only blocks that failed their checksum are left to move.
+     *
+     * @param maxWrites The most blocks to rewrite. A marker that needs more than are left is still finished.
+     * @return The number of blocks rewritten, which is 0 once there is nothing left to do. -1 if a write failed.
+     */
+    public int vacuum(int maxWrites) {
+        lock.writeLock().lock();
+        try {
+            String error = "StorageHashTable vacuum: ";
+
+            //-------------------------------[Input Validation]------------------------
+            try {
+                if (maxWrites < 1) {
+                    throw new IOException(error + "Max writes must be greater than 0!");
+                }
+            } catch (IOException e) {
+                System.out.println(e);
+                return -1;
+            }
+            //-------------------------------------------------------------------------
+
+            int written = 0;
+
+            if (moving == null && blocks.tombstones() > 0 && blocks.size() + blocks.tombstones() == blocks.NUMBER_OF_BLOCKS) {
+                grow(blocks.NUMBER_OF_BLOCKS, blocks.PROBING);
+            }
+
+            //Blocks that failed their checksum stay in the old files, so once only they are left there is nothing more to move.
+            while (moving != null && written < maxWrites && moveCursor <= moving.NUMBER_OF_BLOCKS) {
+                int left = moving.size();
+                moveBlocks();
+
+                if (moving != null && moving.size() == left) {
+                    return -1;                                          //No block could be moved.
+                }
+                written += left - (moving == null ? 0 : moving.size());
+            }
+
+            for (int looked = 0; looked < blocks.NUMBER_OF_BLOCKS && written < maxWrites && blocks.tombstones() > 0; looked++) {
+                if (vacuumCursor > blocks.NUMBER_OF_BLOCKS) {
+                    vacuumCursor = 1;
+                }
+
+                if (blocks.getHeaders()[vacuumCursor - 1] == BlockFile.DELETED) {
+                    int blocksWritten = invalidateSnapshot() ? blocks.vacuum(vacuumCursor) : -1;
+
+                    if (blocksWritten == -1) {
+                        System.out.println(error + "Block " + vacuumCursor + " could not be compacted.");
+                        commit(DURABILITY);
+                        return -1;
+                    }
+                    written += blocksWritten;
+                }
+                vacuumCursor++;
+            }
+
+            if (written > 0 && !commit(DURABILITY)) {
+                return -1;
+            }
+            return written;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Starts vacuuming the table in the background, a few blocks every so often, until <code>stopVacuum</code> is called or the table is
+     * closed. Replaces any background vacuum already running. Changes wait while a step runs, so the rate limits how much they are held up.
+     *
+     * @param blocksPerSecond The most blocks to rewrite each second.
+     */
+    public synchronized void startVacuum(int blocksPerSecond) {
+        String error = "StorageHashTable startVacuum: ";
+
+        //-------------------------------[Input Validation]------------------------
+        try {
+            if (blocksPerSecond < 1) {
+                throw new IOException(error + "Blocks per second must be greater than 0!");
+            }
+        } catch (IOException e) {
+            System.out.println(e);
+            return;
+        }
+        //-------------------------------------------------------------------------
+
+        stopVacuum();
+
+        long period = Math.max(VACUUM_PERIOD, 1000 / blocksPerSecond);
+        int maxWrites = (int) Math.max(1, blocksPerSecond * period / 1000);
+
+        vacuumTask = vacuumer().scheduleAtFixedRate(() -> vacuumStep(maxWrites), period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background vacuum. A step already running finishes first.
+     */
+    public synchronized void stopVacuum() {
+        if (vacuumTask != null) {
+            vacuumTask.cancel(false);
+            vacuumTask = null;
+        }
+    }
+
+    /**
+     * Gets the fraction of the table's blocks marked deleted, which can be used to decide when to vacuum. While the table grows, only the
+     * blocks it is growing into are counted.
+     *
+     * @return The number of deleted blocks divided by the number of blocks.
+     */
+    public double getTombstoneRatio() {
+        lock.readLock().lock();
+        try {
+            return (double) blocks.tombstones() / blocks.NUMBER_OF_BLOCKS;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the table and key files. Any call made after the table is closed will fail.
+     */
+    @Override
+    public void close() {
+        stopVacuum();
+        lock.writeLock().lock();
+        try {
+            blocks.close();
+
+            if (moving != null) {
+                moving.close();
+            }
+            META.close();
+
+            if (SNAPSHOT != null) {
+                SNAPSHOT.close();
+            }
+            if (BLOOM != null) {
+                BLOOM.close();
+            }
+            STATS.unregister();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Saves the table and key files to a directory, replacing any files already there. Used to keep a table that lives in memory once it is
+     * done with. The saved files can be opened as a normal table. A table that is growing finishes moving its blocks first.
+     *
+     * @param filePath Directory to save the hash table in.
+     * @param fileName Name of file. Also used for the key file.
+     * @return True if both files were saved.
+     */
+    public boolean saveTo(String filePath, String fileName) {
+        lock.writeLock().lock();
+        try {
+            String basePath = filePath + File.separator + fileName.substring(0, fileName.indexOf('.'));
+
+            while (moving != null) {
+                int cursor = moveCursor;
+                moveBlocks();
+
+                if (moving != null && moveCursor == cursor) {
+                    return false;                                       //A block could not be moved.
+                }
+            }
+
+            return blocks.copyTo(filePath + File.separator + fileName, basePath + ".keys") && META.copyTo(basePath + ".meta");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the counters for the I/O done by the table and key files and the lookups done by the table. They are also registered as an MBean
+     * named after the table file while the table is open.
+     */
+    public IOStats getStats() {
+        return STATS;
+    }
+
+    /**
+     * @return the number of block reads that failed their checksum since the table was opened.
+     */
+    public long getChecksumFailures() {
+        return checksumFailures.get();
+    }
+
+    /**
+     * @return true if blocks carry a checksum.
+     */
+    public boolean isChecksummed() {
+        return LAYOUT.hasChecksum();
+    }
+
+    /**
+     * @return true if blocks are compressed.
+     */
+    public boolean isCompressed() {
+        return LAYOUT.isCompressed();
+    }
+
+    /**
+     * @return true if the table is only kept in memory.
+     */
+    public boolean isInMemory() {
+        return blocks.getTableFile().isInMemory();
+    }
+
+    /**
+     * Clones current hashTable parameters, including the options it was opened with. Does NOT clone data. The clone counts its I/O in stats
+     * of its own.
+     * @param filePath Directory to store the hash table.
+     * @param fileName Name of file. Also used for the key file.
+     * @return the new, empty hashTable with the same parameters.
+     */
+    public StorageHashTable clone(String filePath, String fileName) {
+        return new StorageHashTable(filePath, fileName, getCapacity(), this.MAX_KEY_LENGTH - 2, SCHEMA, FILE_OPTIONS.copy().stats(null));
+    }
+
+    /**
+     * Builds a schema of String columns for the constructors that take record lengths.
+     *
+     * @param numOfRecords The number of records stored per entry.
+     * @param recordLengths The length of each record.
+     * @return The schema.
+     */
+    private static Schema stringSchema(int numOfRecords, int[] recordLengths) {
+        String error = "StorageHashTable Constructor: ";
+
+        if (numOfRecords != recordLengths.length) {
+            System.out.println(new IOException(error + "Each record must have a length given."));
+        }
+        return Schema.strings(recordLengths);
+    }
+
+    /**
+     * Opens the table's files, carrying on growing if the table was part way through when it was closed and finishing the swap of a bulk
+     * load that was interrupted. A table that isn't growing starts from its snapshot if it can, otherwise it loads its keys and headers from
+     * its files. A table stored with a different probing scheme than the options ask for then starts moving into it.
+     *
+     * @param capacity The number of blocks in the table's files.
+     * @param inMemory True if the table is only kept in memory.
+     */
+    private void openBlocks(int capacity, boolean inMemory) {
+        String error = "StorageHashTable Constructor: ";
+        int state = META.getResizeState();
+        ProbingScheme probing = META.getProbing();
+
+        try {
+            if (META.getCapacity() <= 0) {
+                //A table made before its capacity was recorded used linear probing.
+                probing = !inMemory && new File(TABLE_PATH).length() > 0 ? ProbingScheme.LINEAR : PROBING;
+                META.recordCapacity(capacity, probing, 0, probing, TableMetadata.RESIZE_NONE);
+            }
+
+            if (state == TableMetadata.RESIZE_LOADING) {
+                //The files of a bulk load were complete before their swap was recorded, so the swap is finished.
+                SegmentedFile.moveSegments(new File(TABLE_PATH + LOAD), new File(TABLE_PATH));
+                SegmentedFile.moveSegments(new File(KEY_PATH + LOAD), new File(KEY_PATH));
+                capacity = META.getResizeCapacity();
+                probing = META.getResizeProbing();
+                META.recordCapacity(capacity, probing, 0, probing, TableMetadata.RESIZE_NONE);
+                state = TableMetadata.RESIZE_NONE;
+            }
+            if (!inMemory) {
+                SegmentedFile.deleteSegments(new File(TABLE_PATH + LOAD), 0);  //Left over from a bulk load that never reached its swap.
+                SegmentedFile.deleteSegments(new File(KEY_PATH + LOAD), 0);
+            }
+
+            if (state == TableMetadata.RESIZE_RENAMING) {
+                SegmentedFile.moveSegments(new File(TABLE_PATH), new File(TABLE_PATH + OLD));
+                SegmentedFile.moveSegments(new File(KEY_PATH), new File(KEY_PATH + OLD));
+                META.recordCapacity(capacity, probing, META.getResizeCapacity(), META.getResizeProbing(), TableMetadata.RESIZE_MOVING);
+                state = TableMetadata.RESIZE_MOVING;
+            } else if (state == TableMetadata.RESIZE_NONE && !inMemory) {
+                SegmentedFile.deleteSegments(new File(TABLE_PATH + OLD), 0);  //Left over from growing that finished.
+                SegmentedFile.deleteSegments(new File(KEY_PATH + OLD), 0);
+            }
+        } catch (IOException e) {
+            System.out.println(error + e);
+        }
+
+        if (state == TableMetadata.RESIZE_MOVING) {
+            moving = new BlockFile(TABLE_PATH + OLD, KEY_PATH + OLD, capacity, probing, LAYOUT, MAX_KEY_LENGTH, FILE_OPTIONS);
+            blocks = new BlockFile(TABLE_PATH, KEY_PATH, META.getResizeCapacity(), META.getResizeProbing(), LAYOUT, MAX_KEY_LENGTH,
+                    FILE_OPTIONS);
+            moveCursor = 1;
+            moving.load();
+            blocks.load();
+            return;
+        }
+
+        blocks = new BlockFile(TABLE_PATH, KEY_PATH, capacity, probing, LAYOUT, MAX_KEY_LENGTH, FILE_OPTIONS);
+
+        //Starts from the snapshot in one read if nothing has changed since it was written, otherwise rebuilds the index from the files.
+        if (SNAPSHOT != null && blocks.load(SNAPSHOT)) {
+            snapshotCurrent = true;
+        } else {
+            blocks.load();
+        }
+
+        if (probing != PROBING) {
+            grow(capacity, PROBING);
+        }
+    }
+
+    /**
+     * Starts growing the table into twice as many blocks if adding an entry would take it past its load factor.
+     */
+    private void growIfNeeded() {
+        int capacity = blocks.NUMBER_OF_BLOCKS;
+
+        if (moving != null || LOAD_FACTOR == 0 || size() + 1 <= LOAD_FACTOR * capacity || capacity >= Integer.MAX_VALUE - 1) {
+            return;
+        }
+        grow((int) Math.min(2L * capacity, Integer.MAX_VALUE - 1), PROBING);
+    }
+
+    /**
+     * Renames the table's files out of the way and opens new ones in their place. The blocks are moved over later by <code>moveBlocks</code>.
+     * Each step is recorded first, so a crash part way through carries on when the table is next opened.
+     *
+     * @param capacity The number of blocks to grow to.
+     * @param probing How entries are placed in the new files.
+     */
+    private void grow(int capacity, ProbingScheme probing) {
+        String error = "StorageHashTable grow: ";
+        BlockFile old = blocks;
+
+        if (!invalidateSnapshot() || !old.force()) {
+            return;
+        }
+
+        try {
+            if (old.getTableFile().isInMemory()) {
+                META.recordCapacity(old.NUMBER_OF_BLOCKS, old.PROBING, capacity, probing, TableMetadata.RESIZE_MOVING);
+                moving = old;
+            } else {
+                META.recordCapacity(old.NUMBER_OF_BLOCKS, old.PROBING, capacity, probing, TableMetadata.RESIZE_RENAMING);
+                old.close();
+                SegmentedFile.moveSegments(new File(TABLE_PATH), new File(TABLE_PATH + OLD));
+                SegmentedFile.moveSegments(new File(KEY_PATH), new File(KEY_PATH + OLD));
+                META.recordCapacity(old.NUMBER_OF_BLOCKS, old.PROBING, capacity, probing, TableMetadata.RESIZE_MOVING);
+
+                moving = new BlockFile(TABLE_PATH + OLD, KEY_PATH + OLD, old.NUMBER_OF_BLOCKS, old.PROBING, LAYOUT, MAX_KEY_LENGTH,
+                        FILE_OPTIONS);
+                moving.copyIndex(old);
+            }
+        } catch (IOException e) {
+            System.out.println(error + "The table could not grow and must be reopened to finish. " + e);
+            return;
+        }
+
+        blocks = new BlockFile(TABLE_PATH, KEY_PATH, capacity, probing, LAYOUT, MAX_KEY_LENGTH, FILE_OPTIONS);
+        moveCursor = 1;
+        vacuumCursor = 1;
+        rebuildBloomFilter();                                           //Sized for the new capacity.
+    }
+
+    /**
+     * Moves the next few blocks of the old files into the grown ones while the table grows, and finishes growing once every block has been
+     * moved. A block that can't be moved is tried again with the next change. A block that failed its checksum is skipped and stays in the
+     * old files, so the table doesn't finish growing until that entry is deleted or the table is cleared.
+     */
+    private void moveBlocks() {
+        if (moving == null) {
+            return;
+        }
+
+        for (int moved = 0; moved < MOVE_BLOCKS && moveCursor <= moving.NUMBER_OF_BLOCKS; moveCursor++) {
+            if (moving.inUse(moveCursor)) {
+                if (moveBlock(moveCursor) == -1) {
+                    return;
+                }
+                moved++;
+            }
+        }
 
-        return null;
+        if (moveCursor > moving.NUMBER_OF_BLOCKS && moving.size() == 0) {
+            finishGrowing();
+        }
     }
 
     /**
-     * Replaces data in the block that matches the given key with the given data.
+     * Moves one entry from the old files into the grown ones, then deletes it from the old files.
      *
-     * @param key The key to used to find entry.
-     * @param records The data to replace existing entry with.
-     * @return The previous data for that key. Null if key not found.
+     * @param blockNum The entry's block in the old files.
+     * @return 1 if the entry was moved. 0 if it failed its checksum and was left in the old files. -1 if it could not be moved.
      */
-    public String[] changeRecords(String key, String[] records) {
-        String error = "StorageHashTable replaceEntry: ";
+    private int moveBlock(int blockNum) {
+        String error = "StorageHashTable moveBlock: ";
+        String key = moving.getKey(blockNum);
+        ByteBuffer block = moving.read(blockNum);
 
-        //-------------------------------[Input Validation]------------------------
         try {
-            if (key == null || key.length() == 0 || records.length == 0) {
-                throw new IOException(error + "Input lengths must be greater than 0!");
-            }
-            if (key.length() > MAX_KEY_LENGTH - 2) {
-                throw new IndexOutOfBoundsException(error + "Key length cannot exceed max key length!");
+            if (key == null || block == null) {
+                throw new IOException("Block " + blockNum + " of " + TABLE_PATH + OLD + " could not be read!");
             }
-            if (records.length != RECORD_SIZES.length) {
-                throw new IOException(error + "Amount of records in array does not match previously allocated amount!");
+            if (!LAYOUT.checksumMatches(block)) {
+                //Moving it would give damaged data a valid checksum in the grown files.
+                checksumFailures.incrementAndGet();
+                System.out.println(error + "Block " + blockNum + " of " + TABLE_PATH + OLD + " failed its checksum and is left there.");
+                return 0;
             }
 
-            for (int i = 0; i < records.length; i++) {
-                if (records[i].length() + 2 > RECORD_SIZES[i]) {
-                    throw new IOException(error + "Record " + i + "in array (records[" + i + "] = " + records[i] + ") is too long!");
+            //A crash after the last move was written but before it was deleted from the old files leaves the entry in both.
+            if (blocks.find(key, null) == -1) {
+                LAYOUT.encode(blockBuffer, blocks.homeBlock(key), key, LAYOUT.decodeRecords(block));
+
+                if (blocks.add(key, blockBuffer) == -1) {
+                    throw new IOException(key + " could not be added to " + TABLE_PATH + "!");
                 }
             }
         } catch (IOException e) {
-            System.out.println(e);
-            return null;
+            System.out.println(error + e);
+            return -1;
         }
-        //-------------------------------------------------------------------------
+        return moving.delete(blockNum, key) ? 1 : -1;
+    }
 
-        int block = this.getHashCode(key);
-        int blockProbe = block;
+    /**
+     * Deletes a key left in the old files because its block failed its checksum, so the table can finish growing without it.
+     *
+     * @param key The key to delete.
+     * @param durability How durable the deletion must be when this returns.
+     * @return Always null, since the damaged data can't be returned.
+     */
+    private String[] deleteUnmoved(String key, Durability durability) {
+        int oldBlock = moving == null ? -1 : moving.find(key, null);
 
-        do {
-            if (blockIsEmpty(blockProbe)) {
-                return null;
-            } else if (blockIsDeleted(blockProbe)) {
-                blockProbe++;
-            } else if (getKey(blockProbe).equals(key)) {
-                String[] oldData = readData(blockProbe);
+        if (oldBlock != -1 && invalidateSnapshot() && moving.delete(oldBlock, key)) {
+            commit(durability);
+            moveBlocks();                                               //Finishes growing if it was the last one left.
+        }
+        return null;
+    }
 
-                if (writeData(blockProbe, key, records, false)) {
-                    return oldData;
-                }
-                return null;
+    /**
+     * Records that the table has finished growing and deletes the old files.
+     */
+    private void finishGrowing() {
+        String error = "StorageHashTable finishGrowing: ";
 
-            } else if (blockProbe == NUMBER_OF_BLOCKS) {
-                blockProbe = 1;                                         //If at the end of file, start at the top again.
-            } else {
-                blockProbe++;
+        try {
+            if (!blocks.force()) {
+                throw new IOException("The grown table could not be forced!");
             }
-        } while (blockProbe != block);                                  //Keep searching for requested block unitl back to the start.
+            META.recordCapacity(blocks.NUMBER_OF_BLOCKS, blocks.PROBING, 0, blocks.PROBING, TableMetadata.RESIZE_NONE);
+        } catch (IOException e) {
+            System.out.println(error + e);
+            return;                                                     //Tried again with the next change.
+        }
 
-        return null;
+        BlockFile old = moving;
+        moving = null;
+
+        try {
+            old.deleteFiles();
+        } catch (IOException e) {
+            System.out.println(error + "The old files will be deleted when the table is next opened. " + e);
+        }
     }
 
     /**
-     * Deletes an entry that matches the key.
+     * Writes a batch of new entries into the table's files in one pass.
      *
-     * @param key The key used to find entry to delete.
-     * @return The deleted data.
+     * @param entries The records to store for each key.
+     * @return True if every entry was written.
      */
-    public String[] deleteEntry(String key) {
-        String error = "StorageHashTable deleteEntry: ";
+    private boolean loadInPlace(Map<String, String[]> entries) {
+        String[] keys = entries.keySet().toArray(new String[0]);
+        ByteBuffer[] encoded = new ByteBuffer[keys.length];
 
-        //-------------------------------[Input Validation]------------------------
         try {
-            if (key == null || key.length() == 0) {
-                throw new IOException(error + "Key length must be greater than 0!");
-            }
-            if (key.length() > MAX_KEY_LENGTH - 2) {
-                throw new IndexOutOfBoundsException(error + "Key length cannot exceed max key length!");
+            for (int i = 0; i < keys.length; i++) {
+                encoded[i] = ByteBuffer.allocate(BLOCK_SIZE);
+                LAYOUT.encode(encoded[i], blocks.homeBlock(keys[i]), keys[i], entries.get(keys[i]));
+                addToBloomFilter(keys[i]);                              //Added first, so a write that fails part way never hides the key.
             }
         } catch (IOException e) {
-            System.out.println(e);
-            return null;
+            System.out.println("StorageHashTable addEntries: " + e);
+            return false;
         }
-        //-------------------------------------------------------------------------
+        return blocks.addAll(keys, encoded);
+    }
+
+    /**
+     * Writes the table's entries and a batch of new ones into fresh files, then swaps them in for the table's files and the old files of a
+     * table that was growing. The swap is recorded first, so a crash part way through it is finished the next time the table is opened,
+     * while a crash before it leaves the table as it was. Nothing is swapped in if any of the table's blocks fails its checksum.
+     *
+     * @param entries The records to store for each new key.
+     * @param capacity The number of blocks in the fresh files.
+     * @return True if the fresh files were written and swapped in.
+     */
+    private boolean loadFresh(Map<String, String[]> entries, int capacity) {
+        String error = "StorageHashTable addEntries: ";
+        boolean inMemory = isInMemory();
+        BlockFile fresh;
+        List<String> keys = new ArrayList<>();
+        List<ByteBuffer> encoded = new ArrayList<>();
 
-        int block = this.getHashCode(key);
-        int blockProbe = block;
+        try {
+            if (!inMemory) {
+                SegmentedFile.deleteSegments(new File(TABLE_PATH + LOAD), 0);
+                SegmentedFile.deleteSegments(new File(KEY_PATH + LOAD), 0);
+            }
+            fresh = new BlockFile(TABLE_PATH + LOAD, KEY_PATH + LOAD, capacity, PROBING, LAYOUT, MAX_KEY_LENGTH, FILE_OPTIONS);
+        } catch (IOException e) {
+            System.out.println(error + e);
+            return false;
+        }
 
-        do {
-            if (blockIsEmpty(blockProbe)) {
-                return null;
-            } else if (getKey(blockProbe).equals(key)) {
-                String[] data = readData(blockProbe);
+        try {
+            //The table's entries are read in one sweep of each generation and rebuilt for the fresh files' blocks.
+            for (BlockFile file : moving == null ? new BlockFile[]{blocks} : new BlockFile[]{blocks, moving}) {
+                String[] fileKeys = file.getKeys();
+                int[] blockNums = new int[file.size()];
+                int used = 0;
+
+                for (int i = 0; i < fileKeys.length && used < blockNums.length; i++) {
+                    if (fileKeys[i] != null) {
+                        blockNums[used++] = i + 1;
+                    }
+                }
 
-                if (deleteData(blockProbe, key)) {
-                    return data;
+                blockNums = Arrays.copyOf(blockNums, used);
+                ByteBuffer[] read = file.read(blockNums);
+                String path = file.getTableFile().getFilePath();
+
+                for (int i = 0; i < blockNums.length; i++) {
+                    if (read[i] == null) {
+                        throw new IOException("Block " + blockNums[i] + " of " + path + " could not be read!");
+                    }
+                    if (!LAYOUT.checksumMatches(read[i])) {
+                        //Rewriting it would give damaged data a valid checksum, so the load stops and the table is left as it was.
+                        checksumFailures.incrementAndGet();
+                        throw new IOException("Block " + blockNums[i] + " of " + path + " failed its checksum, so nothing was loaded!");
+                    }
+
+                    String key = fileKeys[blockNums[i] - 1];
+                    ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+                    LAYOUT.encode(block, fresh.homeBlock(key), key, LAYOUT.decodeRecords(read[i]));
+                    keys.add(key);
+                    encoded.add(block);
                 }
+            }
 
-                return null;
+            for (Map.Entry<String, String[]> entry : entries.entrySet()) {
+                ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+                LAYOUT.encode(block, fresh.homeBlock(entry.getKey()), entry.getKey(), entry.getValue());
+                keys.add(entry.getKey());
+                encoded.add(block);
+            }
+
+            if (!fresh.addAll(keys.toArray(new String[0]), encoded.toArray(new ByteBuffer[0])) || !fresh.cover(blocks) || !fresh.force()) {
+                throw new IOException(TABLE_PATH + LOAD + " could not be written!");
+            }
+
+            if (!inMemory) {
+                META.recordCapacity(META.getCapacity(), META.getProbing(), capacity, PROBING, TableMetadata.RESIZE_LOADING);
+            }
+        } catch (IOException e) {
+            System.out.println(error + e);
+
+            try {
+                fresh.deleteFiles();
+            } catch (IOException deleteError) {
+                System.out.println(error + "The unused files will be deleted when the table is next opened. " + deleteError);
+            }
+            return false;
+        }
+
+        BlockFile old = blocks;
+        blocks.close();
 
-            } else if (blockProbe == NUMBER_OF_BLOCKS) {
-                blockProbe = 1;                                         //If at the end of file, start at the top again.
+        if (moving != null) {
+            moving.close();
+        }
+
+        try {
+            if (inMemory) {
+                blocks = fresh;
             } else {
-                blockProbe++;
+                fresh.close();
+                SegmentedFile.moveSegments(new File(TABLE_PATH + LOAD), new File(TABLE_PATH));
+                SegmentedFile.moveSegments(new File(KEY_PATH + LOAD), new File(KEY_PATH));
+
+                blocks = new BlockFile(TABLE_PATH, KEY_PATH, capacity, PROBING, LAYOUT, MAX_KEY_LENGTH, FILE_OPTIONS);
+                blocks.copyIndex(fresh);
             }
-        } while (blockProbe != block);                                  //Keep searching for requested block unitl back to the start.
+            META.recordCapacity(capacity, PROBING, 0, PROBING, TableMetadata.RESIZE_NONE);
 
-        return null;
+            if (moving != null) {
+                moving.deleteFiles();
+            }
+        } catch (IOException e) {
+            System.out.println(error + "The loaded files could not be swapped in and will be when the table is reopened. " + e);
+        }
+
+        moving = null;
+        vacuumCursor = 1;
+        rebuildBloomFilter();
+        return blocks != old;
     }
 
     /**
-     * Gets the key stored in a block.
+     * Finds the block in the table's files that holds a key. While the table grows, a key still in the old files is moved first, so it can
+     * be changed in place. A key whose block failed its checksum stays in the old files and isn't found.
      *
-     * @param blockNum The block to read from.
-     * @return The stored key.
+     * @param key The key to find.
+     * @return The block number. -1 if the key isn't found.
      */
-    public String getKey(int blockNum) {
-        if (blockIsEmpty(blockNum) || blockIsDeleted(blockNum)) {
-            return null;
+    private int findBlock(String key) {
+        if (isDefinitelyAbsent(key)) {
+            return -1;
         }
 
-        int positionToRead = ((blockNum - 1) * BLOCK_SIZE) + 4;
-        return SAVE.readUTF(positionToRead);
+        int blockNum = blocks.find(key, STATS);
+
+        if (blockNum == -1 && moving != null) {
+            int oldBlock = moving.find(key, STATS);
+
+            if (oldBlock != -1 && moveBlock(oldBlock) == 1) {
+                blockNum = blocks.find(key, null);
+            }
+        }
+        return blockNum;
     }
 
     /**
-     * Returns the keys stored in the table.
+     * Finds and reads the block holding a key, looking in the old files too while the table grows.
      *
-     * @return the keys in an array.
+     * @param key The key to find.
+     * @return The block, checked against its checksum if the verify mode asks for it. Null if the key isn't found or the block can't be read.
      */
-    public String[] getKeys() {
-        return keys;
+    private ByteBuffer readBlock(String key) {
+        if (isDefinitelyAbsent(key)) {
+            return null;
+        }
+
+        BlockFile file = blocks;
+        int blockNum = blocks.find(key, STATS);
+
+        if (blockNum == -1 && moving != null) {
+            file = moving;
+            blockNum = moving.find(key, STATS);
+        }
+        return blockNum == -1 ? null : readBlock(file, blockNum);
     }
 
     /**
-     * Checks if a key is in the table.
+     * Finds and reads the block holding a key so one of its records can be read.
      *
-     * @param key The key to find.
-     * @return True only if key is found.
+     * @param key The key used to find the entry.
+     * @param column The column that will be read.
+     * @param error The prefix for error messages.
+     * @return The block, checked against its checksum if the verify mode asks for it. Null if the key isn't found or the input is invalid.
      */
-    public boolean containsKey(String key) {
-        String error = "StorageHashTable containsKey: ";
-
+    private ByteBuffer readField(String key, int column, String error) {
         //-------------------------------[Input Validation]------------------------
         try {
-            if (key == null || key.length() == 0) {
-                throw new IOException(error + "Key length must be greater than 0!");
+            if (key == null || key.length() == 0 || RecordCodec.slotLength(key) > MAX_KEY_LENGTH) {
+                throw new IOException(error + "Key length must be greater than 0 and cannot exceed max key length!");
             }
-            if (key.length() > MAX_KEY_LENGTH - 2) {
-                throw new IndexOutOfBoundsException(error + "Key length cannot exceed max key length!");
+            if (column < 0 || column >= LAYOUT.SCHEMA.getColumnCount()) {
+                throw new IndexOutOfBoundsException(error + "Column " + column + " doesn't exist!");
             }
         } catch (IOException e) {
             System.out.println(e);
-            return false;
+            return null;
         }
         //-------------------------------------------------------------------------
 
-        int block = this.getHashCode(key);
-        int blockProbe = block;
-
-        do {
-            if (blockIsEmpty(blockProbe) || blockIsDeleted(blockProbe)) {
-                return false;
-            } else if (getKey(blockProbe).equals(key)) {
-                return true;
-            } else if (blockProbe == NUMBER_OF_BLOCKS) {
-                blockProbe = 0;                                         //If at the end of file, start at the top again.
-            } else {
-                blockProbe++;
-            }
-        } while (blockProbe != block);                                  //Keep searching for requested key unitl back to the start.
-
-        return false;
+        return readBlock(key);
     }
 
     /**
-     * Gets the hashCode for a specified key.
+     * Writes each record to the file.
      *
-     * @param key The key to hash.
-     * @return The hash of the key. Cannot be zero.
+     * @param blockNum The block to write in. -1 to add the key to a free block.
+     * @param key The key to store.
+     * @param data The records to write.
+     * @param durability How durable the data must be when this returns.
+     * @return The block written. -1 if the write failed.
      */
-    public int getHashCode(String key) {
-        String error = "StorageHashTable getHashCode: ";
+    private int writeData(int blockNum, String key, String[] data, Durability durability) {
+        String error = "StorageHashTable writeData: ";
 
-        //-------------------------------[Input Validation]------------------------
+        if (!invalidateSnapshot()) {
+            return -1;
+        }
+
+        //Builds the whole block in memory so it reaches the file in one write.
         try {
-            if (key == null || key.length() == 0) {
-                throw new IOException(error + "Key length must be greater than 0!");
-            }
-            if (key.length() > MAX_KEY_LENGTH - 2) {
-                throw new IndexOutOfBoundsException(error + "Key length cannot exceed max key length!");
-            }
+            LAYOUT.encode(blockBuffer, blocks.homeBlock(key), key, data);
         } catch (IOException e) {
-            System.out.println(e);
+            System.out.println(error + e);
             return -1;
         }
-        //-------------------------------------------------------------------------
 
-        int notNegativeHash = key.hashCode() & 0x7FFFFFFF;                  //Makes the hashcode positive by removing the sign bit.              
-        return (notNegativeHash % NUMBER_OF_BLOCKS) + 1;                    //Hash can't be 0 because that is used to denote empty block.
-    }
+        if (blockNum == -1) {
+            addToBloomFilter(key);                                      //Added first, so a write that fails part way never hides the key.
+            blockNum = blocks.add(key, blockBuffer);
+        } else if (!blocks.write(blockNum, blockBuffer, key, false)) {
+            blockNum = -1;
+        }
 
-    /**
-     * Gets the number of entries in the file.
-     *
-     * @return The number of entries.
-     */
-    public int size() {
-        return numOfEntries;
+        //The table and key writes share one commit.
+        return blockNum != -1 && commit(durability) ? blockNum : -1;
     }
 
     /**
-     * Tells if the file is empty.
+     * Reads each record from a block.
      *
-     * @return True if file is empty.
+     * @param block The block to read from.
+     * @return Records as a String array. Null if there is no block.
      */
-    public boolean isEmpty() {
-        return numOfEntries == 0;
-    }
+    private String[] readData(ByteBuffer block) {
+        String error = "StorageHashTable readData: ";
 
-    /**
-     * Returns the length of the file
-     *
-     * @return The length of the file in bytes. Returns -1 if file does not exist.
-     */
-    public long getFileLength() {
-        return SAVE.getFileLength();
-    }
-    
-    /**
-     * @return the full file path.
-     */
-    public String getFilePath() {
-        return SAVE.getFilePath();
+        try {
+            return block == null ? null : LAYOUT.decodeRecords(block);
+        } catch (IOException e) {
+            System.out.println(error + e);
+        }
+        return null;
     }
 
     /**
-     * Clears all the data in the table.
+     * Reads a whole block and checks it against its checksum if the verify mode asks for it.
      *
+     * @param file The files the block is in.
+     * @param blockNum The block to read.
+     * @return The block. Null if it is empty, could not be read or failed its checksum.
      */
-    public void clearFile() {
-        SAVE.clearFile();
-        KEY_SAVE.clearFile();
-        keys = new String[NUMBER_OF_BLOCKS];
-        numOfEntries = 0;
-    }
-    
-    /**
-     * Clones current hashTable parameters. Does NOT clone data.
-     * @param filePath Directory to store the hash table.
-     * @param fileName Name of file. Also used for the key file.
-     * @return the new, empty hashTable with the same parameters.
-     */
-    public StorageHashTable clone(String filePath, String fileName) {
-        return new StorageHashTable(filePath, fileName, this.NUMBER_OF_BLOCKS, this.MAX_KEY_LENGTH, this.RECORD_SIZES.length, this.RECORD_SIZES);
+    private ByteBuffer readBlock(BlockFile file, int blockNum) {
+        return verify(file.read(blockNum), blockNum);
     }
 
     /**
-     * Writes each record to the file.
+     * Reads a batch of blocks from one generation in file order and adds the data in them to a map.
      *
-     * @param blockNum The block to write in.
-     * @param key The key to store.
-     * @param data The records to write.
-     * @param newKey Set to true if key hasn't been added. False if only data is being replaced.
-     * @return True if write successful.
+     * @param file The files the blocks are in.
+     * @param keys The key stored in each block.
+     * @param blockNums The blocks to read, in any order.
+     * @param entries The map the data is added to, by key.
      */
-    private boolean writeData(int blockNum, String key, String[] data, boolean newKey) {
-        int realPosition = (blockNum - 1) * BLOCK_SIZE;
+    private void readSorted(BlockFile file, List<String> keys, List<Integer> blockNums, Map<String, String[]> entries) {
+        Integer[] order = new Integer[keys.size()];
 
-        if (SAVE.writeInt(getHashCode(key), realPosition) == false) {
-            return false;
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
         }
-        realPosition += 4;
+        Arrays.sort(order, Comparator.comparing(blockNums::get));
 
-        SAVE.writeUTF(key, realPosition);
-        realPosition += MAX_KEY_LENGTH;
+        int[] sorted = new int[order.length];
 
-        for (int i = 0; i < RECORD_SIZES.length; i++) {
-            SAVE.writeUTF(data[i], realPosition);
-            realPosition += RECORD_SIZES[i];                            //Moves the position that the file writes to the next record location.
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = blockNums.get(order[i]);
         }
 
-        if (newKey) {
-            numOfEntries++;
-            keys[blockNum - 1] = key;
+        ByteBuffer[] read = file.read(sorted);
+
+        for (int i = 0; i < order.length; i++) {
+            String[] data = readData(verify(read[i], sorted[i]));
 
-            KEY_SAVE.writeUTF(key, blockNum * MAX_KEY_LENGTH);
+            if (data != null) {
+                entries.put(keys.get(order[i]), data);
+            }
         }
-        return true;
     }
 
     /**
-     * Reads each record from the file.
+     * Checks a block against its checksum if the verify mode asks for it.
      *
-     * @param blockNum The block to read from.
-     * @return Records as a String array. Null if block is empty.
+     * @param block The block that was read. Null if it is empty or could not be read.
+     * @param blockNum The block's number.
+     * @return The block. Null if it is empty, could not be read or failed its checksum.
      */
-    private String[] readData(int blockNum) {
-        String error = "StorageHashTable readData: ";
-
-        //-------------------------------[Input Validation]------------------------
-        if (blockIsEmpty(blockNum)) {
+    private ByteBuffer verify(ByteBuffer block, int blockNum) {
+        if (block == null) {
             return null;
         }
-        if (blockNum < 1 || blockNum > NUMBER_OF_BLOCKS) {
-            throw new IndexOutOfBoundsException(error + "Block number out of bounds!");
-        }
-        //-------------------------------------------------------------------------
 
-        int realPosition = ((blockNum - 1) * BLOCK_SIZE) + MAX_KEY_LENGTH + 4;
-        String[] records = new String[RECORD_SIZES.length];
+        if (shouldVerify() && !LAYOUT.checksumMatches(block)) {
+            checksumFailures.incrementAndGet();
+            System.out.println("StorageHashTable readData: " + new IOException("Block " + blockNum + " failed its checksum!"));
+            return null;
+        }
+        return block;
+    }
 
-        for (int i = 0; i < RECORD_SIZES.length; i++) {
-            records[i] = SAVE.readUTF(realPosition);
-            realPosition += RECORD_SIZES[i];                            //Moves the position that the file writes to the next record location.
+    /**
+     * Decides whether the block being read should have its checksum checked.
+     *
+     * @return True if the verify mode asks for this read to be checked.
+     */
+    private boolean shouldVerify() {
+        switch (VERIFY_MODE) {
+            case ALWAYS:
+                return true;
+            case SAMPLED:
+                return blockReads.getAndIncrement() % VERIFY_SAMPLE_INTERVAL == 0;
+            default:
+                return false;
         }
-        return records;
     }
 
     /**
@@ -488,72 +1827,151 @@ public class StorageHashTable {
      *
      * @param blockNum The block to mark as empty.
      * @param key The key that will be deleted. Only used in case data must be restored.
+     * @param durability How durable the deletion must be when this returns.
      * @return True only if block was emptied. Attempts to restore data if unsuccessful.
      */
-    private boolean deleteData(int blockNum, String key) {
+    private boolean deleteData(int blockNum, String key, Durability durability) {
         String error = "StorageHashTable deleteData: ";
 
         //-------------------------------[Input Validation]------------------------
-        if (blockIsEmpty(blockNum)) {
-            return false;
-        }
-        if (blockNum < 1 || blockNum > NUMBER_OF_BLOCKS) {
+        if (blockNum < 1 || blockNum > blocks.NUMBER_OF_BLOCKS) {
             throw new IndexOutOfBoundsException(error + "Block number out of bounds!");
         }
+        if (!blocks.inUse(blockNum)) {
+            return false;
+        }
         //-------------------------------------------------------------------------
 
-        int realPosition = (blockNum - 1) * BLOCK_SIZE;
+        if (!invalidateSnapshot()) {
+            return false;
+        }
 
-        if (SAVE.writeInt(DELETED, realPosition) && KEY_SAVE.writeUTF("", blockNum * MAX_KEY_LENGTH) != -1) {
-            numOfEntries--;
-            keys[blockNum - 1] = null;
+        if (blocks.remove(blockNum, key)) {
+            commit(durability);
             return true;
         }
-
-        SAVE.writeInt(getHashCode(key), realPosition);
-        KEY_SAVE.writeUTF(key, blockNum * MAX_KEY_LENGTH);
         return false;
     }
 
     /**
-     * Loads all keys from file into key array.
+     * Marks the snapshot stale before the first change made after it was loaded or written.
+     *
+     * @return True if the snapshot no longer claims to be current. The change must not be made otherwise.
+     */
+    private boolean invalidateSnapshot() {
+        if (snapshotCurrent) {
+            if (!SNAPSHOT.invalidate()) {
+                System.out.println("StorageHashTable invalidateSnapshot: Snapshot could not be marked stale, so the table can't be changed.");
+                return false;
+            }
+            snapshotCurrent = false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks the Bloom filter for a key, counting the lookup if the filter answers it.
+     *
+     * @param key The key to look up.
+     * @return True if the key is definitely not in the table. False if it might be, or there is no filter.
+     */
+    private boolean isDefinitelyAbsent(String key) {
+        if (BLOOM == null || BLOOM.mightContain(key)) {
+            return false;
+        }
+        STATS.recordBloomRejection();
+        return true;
+    }
+
+    /**
+     * Adds a key to the Bloom filter. Once more keys have been added than the filter was sized for, which deleted keys cause over time, it
+     * is rebuilt from the keys in the table.
+     *
+     * @param key The key being added to the table.
+     */
+    private void addToBloomFilter(String key) {
+        if (BLOOM == null) {
+            return;
+        }
+
+        BLOOM.add(key);
+
+        if (BLOOM.size() > getCapacity()) {
+            rebuildBloomFilter();
+            BLOOM.add(key);
+        }
+    }
+
+    /**
+     * Empties the Bloom filter, sizes it for the table's capacity and adds every key in the table to it.
      */
-    private void loadKeys() {
-        long readPosition = 0;
-        keys = new String[NUMBER_OF_BLOCKS];
+    private void rebuildBloomFilter() {
+        if (BLOOM == null) {
+            return;
+        }
+
+        BLOOM.reset(getCapacity());
+
+        for (BlockFile file : moving == null ? new BlockFile[]{blocks} : new BlockFile[]{blocks, moving}) {
+            for (String key : file.getKeys()) {
+                if (key != null) {
+                    BLOOM.add(key);
+                }
+            }
+        }
+    }
 
-        for (int i = 0; i < keys.length; i++) {
-            String key = KEY_SAVE.readUTF(readPosition);
-            readPosition += this.MAX_KEY_LENGTH;
+    /**
+     * Runs one step of the background vacuum, unless it was stopped while the step waited for the lock. A step that fails stops the
+     * background vacuum, so the same failure isn't retried forever.
+     *
+     * @param maxWrites The most blocks to rewrite.
+     */
+    private void vacuumStep(int maxWrites) {
+        lock.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (vacuumTask == null) {
+                    return;
+                }
+            }
 
-            if (key != null && key.length() > 0) {
-                keys[i] = key;
-                this.numOfEntries++;
+            if (vacuum(maxWrites) == -1) {
+                System.out.println("StorageHashTable vacuumStep: The background vacuum stopped after a failed step. Call startVacuum to resume.");
+                stopVacuum();
             }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
     /**
-     * Checks if a block is empty.
+     * Gets the thread shared by every StorageHashTable for background vacuums, starting it the first time it is needed.
      *
-     * @param blockNum The block to check.
-     * @return True only if it is empty.
+     * @return The vacuum thread.
      */
-    private boolean blockIsEmpty(int blockNum) {
-        int realPosition = (blockNum - 1) * BLOCK_SIZE;
-        int value = SAVE.readInt(realPosition);
-        return value == 0;
+    private static synchronized ScheduledExecutorService vacuumer() {
+        if (vacuumer == null) {
+            vacuumer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "StorageHashTable vacuum");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return vacuumer;
     }
 
     /**
-     * Checks if a block is marked DELETED.
+     * Rounds the segment size in the options down to a whole number of units, so no block or key is split between two segment files.
      *
-     * @param blockNum The block to check.
-     * @return True only if block is marked DELETED.
+     * @param options The options given to the constructor.
+     * @param unit The size of one block or key.
+     * @return options with the rounded segment size.
      */
-    private boolean blockIsDeleted(int blockNum) {
-        int realPosition = (blockNum - 1) * BLOCK_SIZE;
-        int value = SAVE.readInt(realPosition);
-        return value == DELETED;
+    static StorageOptions segmentOptions(StorageOptions options, int unit) {
+        if (options.getSegmentSize() == 0) {
+            return options;
+        }
+        return options.copy().segmentSize(Math.max(1, options.getSegmentSize() / unit) * unit);
     }
 }
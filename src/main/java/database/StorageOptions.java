@@ -0,0 +1,405 @@
+package database;
+
+/**
+ * Settings that control how a DataSaver or StorageHashTable stores its data. Every setter returns the same object so settings can be chained.
+ *
+ * @author Jiyansh Agarwal
+ */
+public class StorageOptions {
+
+    final static private long DEFAULT_WRITE_BACK_CACHE_SIZE = 256 * 1024;
+
+    private StorageType storageType = StorageType.FILE;
+    private Durability durability = Durability.NONE;
+    private long pageCacheSize = 0;
+    private int pageSize = 4096;
+    private boolean writeBack = false;
+    private long asyncFlushDelay = 100;
+    private long segmentSize = 0;
+    private boolean checksums = true;
+    private VerifyMode verifyMode = VerifyMode.ALWAYS;
+    private int compressedBlockSize = 0;
+    private long growthChunk = 64 * 1024;
+    private IOStats stats;
+    private double loadFactor = 0.75;
+    private ProbingScheme probing = ProbingScheme.LINEAR;
+    private double bloomFalsePositiveRate = 0;
+
+    /**
+     * Sets where the data is kept and which backend reads and writes it. Data kept in memory ignores the page cache and segment settings, and
+     * a RandomAccessFile is never split into segments.
+     *
+     * @param storageType The storage type. Cannot be null.
+     * @return these options.
+     */
+    public StorageOptions storageType(StorageType storageType) {
+        if (storageType == null) {
+            throw new NullPointerException("StorageOptions storageType: Null storage type");
+        }
+        this.storageType = storageType;
+        return this;
+    }
+
+    /**
+     * Memory maps the file so reads and writes become plain memory accesses instead of system calls. Each segment is mapped on its own, so files
+     * larger than 2 GB must be split into segments of 2 GB or less. The same as setting the storage type to <code>MEMORY_MAPPED</code>.
+     *
+     * @param memoryMapped True to memory map the file. False goes back to a plain file if the file was memory mapped.
+     * @return these options.
+     */
+    public StorageOptions memoryMapped(boolean memoryMapped) {
+        if (memoryMapped) {
+            this.storageType = StorageType.MEMORY_MAPPED;
+        } else if (this.storageType == StorageType.MEMORY_MAPPED) {
+            this.storageType = StorageType.FILE;
+        }
+        return this;
+    }
+
+    /**
+     * Sets when written data is forced to the storage device.
+     *
+     * @param durability The durability level. Cannot be null.
+     * @return these options.
+     */
+    public StorageOptions durability(Durability durability) {
+        if (durability == null) {
+            throw new NullPointerException("StorageOptions durability: Null durability");
+        }
+        this.durability = durability;
+        return this;
+    }
+
+    /**
+     * Puts a least recently used page cache in front of the file. Ignored for memory mapped files, which are already cached by the operating
+     * system.
+     *
+     * @param bytes The most memory the cache may use in bytes. 0 turns the cache off.
+     * @return these options.
+     */
+    public StorageOptions pageCache(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("StorageOptions pageCache: Cache size cannot be negative!");
+        }
+        this.pageCacheSize = bytes;
+        return this;
+    }
+
+    /**
+     * Sets the size of each page in the page cache.
+     *
+     * @param bytes The page size in bytes.
+     * @return these options.
+     */
+    public StorageOptions pageSize(int bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("StorageOptions pageSize: Page size must be greater than 0!");
+        }
+        this.pageSize = bytes;
+        return this;
+    }
+
+    /**
+     * Keeps written pages in the page cache until they are evicted or flushed instead of writing them to the file straight away. This lets
+     * every write made by one table operation reach the file as a single page write. If no page cache size was set, a 256 KB cache is used.
+     *
+     * @param writeBack True to write back, false to write through.
+     * @return these options.
+     */
+    public StorageOptions writeBack(boolean writeBack) {
+        this.writeBack = writeBack;
+        return this;
+    }
+
+    /**
+     * Sets how long an <code>ASYNC</code> write may wait before it is forced to the storage device.
+     *
+     * @param millis The delay in milliseconds.
+     * @return these options.
+     */
+    public StorageOptions asyncFlushDelay(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("StorageOptions asyncFlushDelay: Delay cannot be negative!");
+        }
+        this.asyncFlushDelay = millis;
+        return this;
+    }
+
+    /**
+     * Splits the file into segment files of a fixed size. A StorageHashTable rounds the size down to a whole number of blocks so no block is
+     * split between two segments.
+     *
+     * @param bytes The size of each segment in bytes. 0 keeps the whole file in one segment.
+     * @return these options.
+     */
+    public StorageOptions segmentSize(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("StorageOptions segmentSize: Segment size cannot be negative!");
+        }
+        this.segmentSize = bytes;
+        return this;
+    }
+
+    /**
+     * Stores a CRC32C checksum in every block of a StorageHashTable so damaged blocks are found when they are read. A table stored without
+     * checksums is migrated once when it is opened with them, and the other way around.
+     *
+     * @param checksums True to store checksums.
+     * @return these options.
+     */
+    public StorageOptions checksums(boolean checksums) {
+        this.checksums = checksums;
+        return this;
+    }
+
+    /**
+     * Sets how often block checksums are checked when blocks are read.
+     *
+     * @param verifyMode The verify mode. Cannot be null.
+     * @return these options.
+     */
+    public StorageOptions verifyMode(VerifyMode verifyMode) {
+        if (verifyMode == null) {
+            throw new NullPointerException("StorageOptions verifyMode: Null verify mode");
+        }
+        this.verifyMode = verifyMode;
+        return this;
+    }
+
+    /**
+     * Stores StorageHashTable blocks compressed into a smaller fixed block size. The key and records are packed without their unused slot
+     * space and deflated when that makes them smaller, so tables with mostly empty or repetitive records take up far fewer pages. Every read
+     * and write pays for the packing and deflating, and an entry that doesn't fit in the smaller block can't be added. A table is migrated
+     * once when it is opened with a different block size than it is stored with.
+     *
+     * @param bytes The size of each compressed block in bytes, including its header. 0 stores blocks uncompressed.
+     * @return these options.
+     */
+    public StorageOptions compressedBlockSize(int bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("StorageOptions compressedBlockSize: Block size cannot be negative!");
+        }
+        this.compressedBlockSize = bytes;
+        return this;
+    }
+
+    /**
+     * Sets how a file given a length when it is created grows. With a chunk size the file starts empty and grows a chunk at a time as data
+     * is first written past its end, and anything read between its end and its length reads as zeros. Clearing the file then only has to
+     * drop the part that was written. Without one the file is made its full length when it is created, as before.
+     *
+     * @param bytes The size of each chunk the file grows by in bytes. 0 makes the file its full length up front.
+     * @return these options.
+     */
+    public StorageOptions growthChunk(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("StorageOptions growthChunk: Chunk size cannot be negative!");
+        }
+        this.growthChunk = bytes;
+        return this;
+    }
+
+    /**
+     * Counts the I/O of the file in the given stats instead of in stats of its own, so several files can share one set of counters.
+     *
+     * @param stats The stats to count in. Null gives each file its own.
+     * @return these options.
+     */
+    public StorageOptions stats(IOStats stats) {
+        this.stats = stats;
+        return this;
+    }
+
+    /**
+     * Sets how full a StorageHashTable can get before it grows. Once adding an entry would take it past this share of its blocks, the table
+     * starts moving into a file with twice as many blocks, a few blocks at a time with each change, so no single call rebuilds the table.
+     *
+     * @param loadFactor The share of blocks that can be in use, from 0 to 1. 0 keeps the table the size it was made with.
+     * @return these options.
+     */
+    public StorageOptions loadFactor(double loadFactor) {
+        if (!(loadFactor >= 0 && loadFactor <= 1)) {
+            throw new IllegalArgumentException("StorageOptions loadFactor: Load factor must be from 0 to 1!");
+        }
+        this.loadFactor = loadFactor;
+        return this;
+    }
+
+    /**
+     * Sets how a StorageHashTable places entries whose block is already taken. A table stored with a different scheme is moved into the new
+     * one a few blocks at a time, the same way it grows.
+     *
+     * @param probing The probing scheme.
+     * @return these options.
+     */
+    public StorageOptions probing(ProbingScheme probing) {
+        if (probing == null) {
+            throw new NullPointerException("StorageOptions probing: Null probing scheme");
+        }
+        this.probing = probing;
+        return this;
+    }
+
+    /**
+     * Gives a StorageHashTable a Bloom filter of its keys, so lookups for keys that are definitely not in the table return without probing.
+     * The filter is sized for the table's capacity, saved next to the table when it is checkpointed and rebuilt from the keys when it is
+     * opened without a usable one. A lower false positive rate lets fewer absent keys through to be probed, at the cost of a larger filter.
+     *
+     * @param falsePositiveRate The share of absent keys the filter may let through, from 0 to 1. 0 turns the filter off.
+     * @return these options.
+     */
+    public StorageOptions bloomFilter(double falsePositiveRate) {
+        if (!(falsePositiveRate >= 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("StorageOptions bloomFilter: False positive rate must be at least 0 and less than 1!");
+        }
+        this.bloomFalsePositiveRate = falsePositiveRate;
+        return this;
+    }
+
+    /**
+     * Makes a copy of these options that can be changed without changing these options.
+     *
+     * @return the copy.
+     */
+    public StorageOptions copy() {
+        StorageOptions copy = new StorageOptions();
+        copy.storageType = storageType;
+        copy.durability = durability;
+        copy.pageCacheSize = pageCacheSize;
+        copy.pageSize = pageSize;
+        copy.writeBack = writeBack;
+        copy.asyncFlushDelay = asyncFlushDelay;
+        copy.segmentSize = segmentSize;
+        copy.checksums = checksums;
+        copy.verifyMode = verifyMode;
+        copy.compressedBlockSize = compressedBlockSize;
+        copy.growthChunk = growthChunk;
+        copy.stats = stats;
+        copy.loadFactor = loadFactor;
+        copy.probing = probing;
+        copy.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        return copy;
+    }
+
+    /**
+     * @return where the data is kept.
+     */
+    public StorageType getStorageType() {
+        return storageType;
+    }
+
+    /**
+     * @return true if the file is memory mapped.
+     */
+    public boolean isMemoryMapped() {
+        return storageType == StorageType.MEMORY_MAPPED;
+    }
+
+    /**
+     * @return true if the data is only kept in memory.
+     */
+    public boolean isInMemory() {
+        return storageType == StorageType.HEAP || storageType == StorageType.OFF_HEAP;
+    }
+
+    /**
+     * @return when written data is forced to the storage device.
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * @return the most memory the page cache may use in bytes. 0 if there is no page cache.
+     */
+    public long getPageCacheSize() {
+        if (pageCacheSize == 0 && writeBack) {
+            return DEFAULT_WRITE_BACK_CACHE_SIZE;
+        }
+        return pageCacheSize;
+    }
+
+    /**
+     * @return the size of each page in the page cache.
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return true if the page cache keeps written pages until they are evicted or flushed.
+     */
+    public boolean isWriteBack() {
+        return writeBack;
+    }
+
+    /**
+     * @return how long an <code>ASYNC</code> write may wait before it is forced, in milliseconds.
+     */
+    public long getAsyncFlushDelay() {
+        return asyncFlushDelay;
+    }
+
+    /**
+     * @return the size of each segment file in bytes. 0 if the file isn't split into segments.
+     */
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * @return true if StorageHashTable blocks carry a checksum.
+     */
+    public boolean isChecksummed() {
+        return checksums;
+    }
+
+    /**
+     * @return how often block checksums are checked when blocks are read.
+     */
+    public VerifyMode getVerifyMode() {
+        return verifyMode;
+    }
+
+    /**
+     * @return the size of each compressed StorageHashTable block in bytes. 0 if blocks are stored uncompressed.
+     */
+    public int getCompressedBlockSize() {
+        return compressedBlockSize;
+    }
+
+    /**
+     * @return the size of each chunk a file grows by in bytes. 0 if files are made their full length when they are created.
+     */
+    public long getGrowthChunk() {
+        return growthChunk;
+    }
+
+    /**
+     * @return the stats the file's I/O is counted in. Null if each file has its own.
+     */
+    public IOStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return the share of a StorageHashTable's blocks that can be in use before it grows. 0 if it never grows.
+     */
+    public double getLoadFactor() {
+        return loadFactor;
+    }
+
+    /**
+     * @return how a StorageHashTable places entries whose block is already taken.
+     */
+    public ProbingScheme getProbing() {
+        return probing;
+    }
+
+    /**
+     * @return the false positive rate of a StorageHashTable's Bloom filter. 0 if it has none.
+     */
+    public double getBloomFalsePositiveRate() {
+        return bloomFalsePositiveRate;
+    }
+}
@@ -0,0 +1,32 @@
+package database;
+
+/**
+ * Where a DataSaver or StorageHashTable keeps its data and which StorageBackend reads and writes it. Every type stores the same bytes in the
+ * same layout.
+ *
+ * @author Jiyansh Agarwal
+ */
+public enum StorageType {
+
+    /**
+     * Data is kept in a file on disk and read and written with positional FileChannel calls. The file can be split into segments.
+     */
+    FILE,
+    /**
+     * Data is kept in a single file on disk and read and written with RandomAccessFile seeks. Every call is serialized on the file.
+     */
+    RANDOM_ACCESS_FILE,
+    /**
+     * Data is kept in a file on disk that is memory mapped, so reads and writes are plain memory accesses instead of system calls.
+     */
+    MEMORY_MAPPED,
+    /**
+     * Data is kept in memory on the Java heap and is lost when it is closed. Nothing is written to disk unless it is saved.
+     */
+    HEAP,
+    /**
+     * Data is kept in memory outside the Java heap, so large tables don't add to garbage collection work. It is lost when it is closed and
+     * nothing is written to disk unless it is saved.
+     */
+    OFF_HEAP
+}
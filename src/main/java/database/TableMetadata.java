@@ -0,0 +1,399 @@
+package database;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The small metadata file kept next to a StorageHashTable that records which format its blocks are stored in, including the size of
+ * compressed blocks and the schema of its records. A table file without one was written before formats were recorded and is read as the
+ * original format, and a table without a recorded schema is read with the String columns it was made with. When the format a table is opened with differs from the format
+ * it is stored in, every block is rewritten once into a new file that then replaces the old one. The swap is recorded first, so a crash part
+ * way through it is finished the next time the table is opened.
+ * <p>
+ * It also records how many blocks a table has and how they are probed, and whether it is part way through growing, moving to another
+ * probing scheme or swapping in the files of a bulk load, after the schema.
+ *
+ * @author Jiyansh Agarwal
+ */
+class TableMetadata implements AutoCloseable {
+
+    final static private int MAGIC = 0x53485442;                    //"SHTB"
+    final static private int SWAPPING = 1 << 30;                    //Flag for a migrated file that is still replacing the old file.
+    final static private int SIZE = 16;                             //The schema follows: its column count, then each column's type and max length.
+    final static private int CAPACITY_SIZE = 20;                    //Capacity, resize capacity, resize state and both probing schemes.
+    final static int RESIZE_NONE = 0;
+    final static int RESIZE_RENAMING = 1;                           //The old files are being renamed out of the way.
+    final static int RESIZE_MOVING = 2;                             //Blocks are being moved from the old files into the new ones.
+    final static int RESIZE_LOADING = 3;                            //Files written by a bulk load are replacing the table's files.
+
+    final private DataSaver SAVE;
+    private int checksumFailures;                                   //Blocks that failed their checksum while the table was migrated.
+
+    /**
+     * Opens the metadata file, creating it if it doesn't exist. The metadata of a table kept in memory is also kept in memory.
+     *
+     * @param path Path of the metadata file.
+     * @param options How the table is stored.
+     */
+    TableMetadata(String path, StorageOptions options) {
+        StorageOptions metaOptions = new StorageOptions().storageType(options.isInMemory() ? options.getStorageType() : StorageType.FILE);
+        SAVE = new DataSaver(path, 0, metaOptions);
+    }
+
+    /**
+     * Gets the block layout for a table, migrating the table file first if it is stored in a different format than the one asked for.
+     *
+     * @param tablePath Path of the table file.
+     * @param numberOfBlocks The number of blocks in the table.
+     * @param keySize The size of the key slot, including the two byte length.
+     * @param schema The columns the table's records should be stored in.
+     * @param options How the table is stored, including the format it should be in.
+     * @return The layout of the table's blocks.
+     * @throws IOException if the metadata could not be read or written, or the table could not be migrated.
+     */
+    BlockLayout open(String tablePath, int numberOfBlocks, int keySize, Schema schema, StorageOptions options) throws IOException {
+        File table = new File(tablePath);
+        File migrated = new File(tablePath + ".migrate");
+        BlockLayout layout = BlockLayout.forOptions(options, keySize, schema);
+        int stored = readFlags();
+        int compressedSize = readCompressedSize();
+        Schema storedSchema = readSchema();
+
+        if (stored != -1 && (stored & SWAPPING) != 0) {
+            stored &= ~SWAPPING;
+            swap(migrated, table, SAVE.readInt(8));
+            writeFormat(stored, compressedSize, 0, storedSchema);
+        } else if (!options.isInMemory()) {
+            SegmentedFile.deleteSegments(migrated, 0);                  //Left over from a migration that never finished.
+        }
+
+        boolean legacy = !options.isInMemory() && table.length() > 0;
+
+        if (stored == -1) {
+            stored = legacy ? 0 : layout.FLAGS;
+            compressedSize = legacy ? 0 : layout.getCompressedSize();
+        }
+        if (storedSchema == null) {
+            storedSchema = legacy && schema.getLegacy() != null ? schema.getLegacy() : schema;
+        }
+
+        BlockLayout current = new BlockLayout(stored, compressedSize, keySize, storedSchema);
+
+        if (!current.sameFormat(layout) && getResizeState() != RESIZE_NONE) {
+            return current;                                             //Migrated once the table has finished growing.
+        } else if (!current.sameFormat(layout)) {
+            try {
+                migrate(table, migrated, numberOfBlocks, current, layout, options);
+            } catch (IOException e) {
+                System.out.println("TableMetadata open: " + table + " could not be migrated and is left in its old format. " + e);
+                SegmentedFile.deleteSegments(migrated, 0);
+                return current;
+            }
+        } else if (readFlags() != layout.FLAGS || readCompressedSize() != layout.getCompressedSize() || !schema.equals(readSchema())) {
+            writeFormat(layout.FLAGS, layout.getCompressedSize(), 0, schema);
+        }
+        return layout;
+    }
+
+    /**
+     * @return the number of blocks that failed their checksum while the table was migrated.
+     */
+    int getChecksumFailures() {
+        return checksumFailures;
+    }
+
+    /**
+     * @return the number of blocks in the table's files. -1 if it was never recorded.
+     */
+    int getCapacity() {
+        long offset = capacityOffset();
+        return offset == -1 ? -1 : SAVE.readInt(offset);
+    }
+
+    /**
+     * @return how the blocks in the table's files are probed. LINEAR if it was never recorded.
+     */
+    ProbingScheme getProbing() {
+        return readProbing(12);
+    }
+
+    /**
+     * @return how the blocks in the files the table is moving to are probed.
+     */
+    ProbingScheme getResizeProbing() {
+        return readProbing(16);
+    }
+
+    /**
+     * @return the number of blocks the table is moving to. 0 if it isn't moving.
+     */
+    int getResizeCapacity() {
+        long offset = capacityOffset();
+        return offset == -1 ? 0 : SAVE.readInt(offset + 4);
+    }
+
+    /**
+     * @return how far the table is through moving. <code>RESIZE_NONE</code> if it isn't moving.
+     */
+    int getResizeState() {
+        long offset = capacityOffset();
+        return offset == -1 ? RESIZE_NONE : SAVE.readInt(offset + 8);
+    }
+
+    /**
+     * Records how many blocks the table has and how they are probed, and what it is moving to, and forces it to the storage device.
+     *
+     * @param capacity The number of blocks in the table's files.
+     * @param probing How the blocks in the table's files are probed.
+     * @param resizeCapacity The number of blocks it is moving to. 0 if it isn't moving.
+     * @param resizeProbing How the blocks it is moving to are probed.
+     * @param state How far it is through moving.
+     * @throws IOException if the capacity could not be written.
+     */
+    void recordCapacity(int capacity, ProbingScheme probing, int resizeCapacity, ProbingScheme resizeProbing, int state) throws IOException {
+        long offset = capacityOffset();
+        ByteBuffer fields = ByteBuffer.allocate(CAPACITY_SIZE).putInt(0, capacity).putInt(4, resizeCapacity).putInt(8, state)
+                .putInt(12, probing.ordinal()).putInt(16, resizeProbing.ordinal());
+
+        if (SAVE.getFileLength() < SIZE + 4) {
+            throw new IOException("Table capacity can't be recorded before its format!");
+        }
+        if (offset == -1) {
+            offset = SIZE + 4 + SAVE.readInt(SIZE) * 5L;
+        }
+        if (!SAVE.writeBytes(fields, offset) || !SAVE.force()) {
+            throw new IOException("Table capacity could not be recorded!");
+        }
+    }
+
+    /**
+     * Copies the metadata to a file, replacing the file if it already exists.
+     *
+     * @param path The file to copy to.
+     * @return True if operation successful.
+     */
+    boolean copyTo(String path) {
+        return SAVE.copyTo(path);
+    }
+
+    /**
+     * Closes the metadata file.
+     */
+    @Override
+    public void close() {
+        SAVE.close();
+    }
+
+    /**
+     * Rewrites every block of the table in the new format into a new file, then replaces the table file with it.
+     *
+     * @param table The table file.
+     * @param migrated The file to build the new table in.
+     * @param numberOfBlocks The number of blocks in the table.
+     * @param from The format the table is stored in.
+     * @param to The format the table will be stored in.
+     * @param options How the table is stored.
+     * @throws IOException if a block could not be read or written, or failed its checksum.
+     */
+    private void migrate(File table, File migrated, int numberOfBlocks, BlockLayout from, BlockLayout to, StorageOptions options)
+            throws IOException {
+        int segments;
+
+        try (DataSaver source = new DataSaver(table.getPath(), (long) numberOfBlocks * from.BLOCK_SIZE,
+                StorageHashTable.segmentOptions(options, from.BLOCK_SIZE));
+                DataSaver target = new DataSaver(migrated.getPath(), (long) numberOfBlocks * to.BLOCK_SIZE,
+                        StorageHashTable.segmentOptions(options, to.BLOCK_SIZE))) {
+            ByteBuffer oldBlock = ByteBuffer.allocate(from.BLOCK_SIZE);
+            ByteBuffer newBlock = ByteBuffer.allocate(to.BLOCK_SIZE);
+            long written = source.getFileLength();                      //Blocks past the end of a file that grows in chunks are empty.
+
+            for (int i = 0; i < numberOfBlocks && (long) i * from.BLOCK_SIZE < written; i++) {
+                oldBlock.clear();
+
+                if (!source.readBytes(oldBlock, (long) i * from.BLOCK_SIZE)) {
+                    throw new IOException("Block " + (i + 1) + " of " + table + " could not be read!");
+                }
+
+                int state = oldBlock.getInt(0);
+
+                if (state == 0) {
+                    continue;                                           //Empty blocks are already zeros in the new file.
+                }
+                if (!from.checksumMatches(oldBlock)) {
+                    //Rewriting it would give damaged data a valid checksum, so the table is left in its old format instead.
+                    checksumFailures++;
+                    throw new IOException("Block " + (i + 1) + " of " + table + " failed its checksum!");
+                }
+
+                to.encode(newBlock, state, from.decodeKey(oldBlock), from.decodeRecords(oldBlock));
+
+                if (!target.writeBytes(newBlock, (long) i * to.BLOCK_SIZE)) {
+                    throw new IOException("Block " + (i + 1) + " of " + migrated + " could not be written!");
+                }
+            }
+
+            if (!target.force()) {
+                throw new IOException(migrated + " could not be forced!");
+            }
+            segments = Math.max(1, target.getSegmentCount());
+        }
+
+        writeFormat(to.FLAGS | SWAPPING, to.getCompressedSize(), segments, to.SCHEMA);
+        swap(migrated, table, segments);
+        writeFormat(to.FLAGS, to.getCompressedSize(), 0, to.SCHEMA);
+    }
+
+    /**
+     * Moves every segment of the migrated file over the table file and deletes any table segments past them. Safe to repeat if a previous
+     * swap was interrupted.
+     *
+     * @param migrated The migrated file.
+     * @param table The table file.
+     * @param segments The number of segments in the migrated file.
+     * @throws IOException if a segment could not be moved or deleted.
+     */
+    private static void swap(File migrated, File table, int segments) throws IOException {
+        for (int i = segments - 1; i >= 0; i--) {
+            File segment = SegmentedFile.segmentPath(migrated, i);
+
+            if (segment.exists()) {
+                Files.move(segment.toPath(), SegmentedFile.segmentPath(table, i).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        SegmentedFile.deleteSegments(table, segments);
+    }
+
+    /**
+     * Reads the format flags.
+     *
+     * @return The flags. -1 if no format has been recorded.
+     */
+    private int readFlags() {
+        if (SAVE.getFileLength() < 12 || SAVE.readInt(0) != MAGIC) {
+            return -1;
+        }
+        return SAVE.readInt(4);
+    }
+
+    /**
+     * Reads the size of compressed blocks.
+     *
+     * @return The size in bytes. 0 if blocks aren't compressed or it was never recorded.
+     */
+    private int readCompressedSize() {
+        if (SAVE.getFileLength() < SIZE) {
+            return 0;                                                   //Recorded before compression existed.
+        }
+        return SAVE.readInt(12);
+    }
+
+    /**
+     * Reads the schema of the table's records.
+     *
+     * @return The schema. Null if it was never recorded.
+     */
+    private Schema readSchema() {
+        if (SAVE.getFileLength() < SIZE + 4) {
+            return null;                                                //Recorded before schemas existed.
+        }
+
+        int columns = SAVE.readInt(SIZE);
+        ByteBuffer fields = ByteBuffer.allocate(Math.max(0, columns) * 5);
+
+        if (columns <= 0 || !SAVE.readBytes(fields, SIZE + 4)) {
+            return null;
+        }
+
+        Schema schema = new Schema();
+
+        for (int i = 0; i < columns; i++) {
+            int type = fields.get(i * 5);
+            int maxLength = fields.getInt(i * 5 + 1);
+
+            if (type < 0 || type >= ColumnType.values().length) {
+                return null;
+            }
+
+            switch (ColumnType.values()[type]) {
+                case INT:
+                    schema.addInt();
+                    break;
+                case SHORT:
+                    schema.addShort();
+                    break;
+                case BOOLEAN:
+                    schema.addBoolean();
+                    break;
+                default:
+                    schema.addString(maxLength);
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Finds where the capacity is recorded, just past the schema.
+     *
+     * @return The position. -1 if no capacity has been recorded.
+     */
+    private long capacityOffset() {
+        if (SAVE.getFileLength() < SIZE + 4) {
+            return -1;
+        }
+
+        long offset = SIZE + 4 + SAVE.readInt(SIZE) * 5L;
+        return SAVE.getFileLength() < offset + 12 ? -1 : offset;
+    }
+
+    /**
+     * Reads a probing scheme recorded with the capacity.
+     *
+     * @param field Where the scheme is recorded, from the start of the capacity.
+     * @return The scheme. LINEAR if it was never recorded.
+     */
+    private ProbingScheme readProbing(int field) {
+        long offset = capacityOffset();
+
+        if (offset == -1 || SAVE.getFileLength() < offset + CAPACITY_SIZE) {
+            return ProbingScheme.LINEAR;
+        }
+
+        int scheme = SAVE.readInt(offset + field);
+        return scheme >= 0 && scheme < ProbingScheme.values().length ? ProbingScheme.values()[scheme] : ProbingScheme.LINEAR;
+    }
+
+    /**
+     * Records the format and forces it to the storage device.
+     *
+     * @param flags The format flags.
+     * @param compressedSize The size of compressed blocks. 0 if blocks aren't compressed.
+     * @param segments The number of segments being swapped in. Only used while a swap is in progress.
+     * @param schema The schema of the table's records. Null to leave it unrecorded.
+     * @throws IOException if the format could not be written.
+     */
+    private void writeFormat(int flags, int compressedSize, int segments, Schema schema) throws IOException {
+        int columns = schema == null ? 0 : schema.getColumnCount();
+        int capacity = getCapacity();
+        int offset = SIZE + 4 + columns * 5;                            //The capacity is kept past the schema, wherever it ends.
+        ByteBuffer meta = ByteBuffer.allocate(offset + (capacity == -1 ? 0 : CAPACITY_SIZE));
+
+        if (capacity != -1) {
+            meta.putInt(offset, capacity).putInt(offset + 4, getResizeCapacity()).putInt(offset + 8, getResizeState())
+                    .putInt(offset + 12, getProbing().ordinal()).putInt(offset + 16, getResizeProbing().ordinal());
+        }
+
+        meta.putInt(0, MAGIC).putInt(4, flags).putInt(8, segments).putInt(12, compressedSize).putInt(SIZE, columns);
+
+        for (int i = 0; i < columns; i++) {
+            meta.put(SIZE + 4 + i * 5, (byte) schema.getType(i).ordinal()).putInt(SIZE + 4 + i * 5 + 1, schema.getMaxLength(i));
+        }
+
+        //Trimmed after the write, so a shorter schema never leaves bytes that read as a capacity.
+        if (!SAVE.writeBytes(meta, 0) || !SAVE.setLength(meta.capacity()) || !SAVE.force()) {
+            throw new IOException("Table format could not be recorded!");
+        }
+    }
+}
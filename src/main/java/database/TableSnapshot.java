@@ -0,0 +1,168 @@
+package database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * A compact copy of what a StorageHashTable keeps in memory, kept next to the table so it can start with one sequential read instead of
+ * rebuilding its keys from the whole key file. It holds the key and header of every block in use. The snapshot is only trusted if nothing has
+ * changed since it was written, so the table marks it stale, and forces that mark, before it changes anything. A stale, damaged or missing
+ * snapshot, or one written for a different format, makes the table rebuild its keys and headers from its files as before.
+ * <p>
+ * The file starts with a magic number, a version, whether the snapshot is current and a CRC32C of everything after the first 16 bytes: the
+ * number of blocks, the format flags, the block size and the number of entries. Each entry is the block number, the block's header and its
+ * key. Deleted blocks are kept with an empty key, since probing has to step over them.
+ *
+ * @author Jiyansh Agarwal
+ */
+class TableSnapshot implements AutoCloseable {
+
+    final static private int MAGIC = 0x53485443;                    //"SHTC"
+    final static private int VERSION = 2;                        //Version 1 left out deleted blocks.
+    final static private int CURRENT = 1;
+    final static private int STALE = 0;
+    final static private int STATE_OFFSET = 8;
+    final static private int HEADER_SIZE = 32;
+
+    final private DataSaver SAVE;
+
+    /**
+     * Opens the snapshot file, creating it if it doesn't exist.
+     *
+     * @param path Path of the snapshot file.
+     */
+    TableSnapshot(String path) {
+        SAVE = new DataSaver(path, 0, new StorageOptions());
+    }
+
+    /**
+     * Reads the keys and headers from the snapshot if it is current and was written for this table's format.
+     *
+     * @param numberOfBlocks The number of blocks in the table.
+     * @param layout The layout of the table's blocks.
+     * @param headers Filled with the header of every block, indexed like the keys. Only complete if the keys are returned.
+     * @return The keys, indexed by block number - 1. Null if the snapshot can't be used.
+     */
+    String[] load(int numberOfBlocks, BlockLayout layout, int[] headers) {
+        long length = SAVE.getFileLength();
+
+        if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        ByteBuffer snapshot = ByteBuffer.allocate((int) length);
+
+        if (!SAVE.readBytes(snapshot, 0) || snapshot.getInt(0) != MAGIC || snapshot.getInt(4) != VERSION
+                || snapshot.getInt(STATE_OFFSET) != CURRENT || snapshot.getInt(12) != checksum(snapshot)) {
+            return null;
+        }
+        if (snapshot.getInt(16) != numberOfBlocks || snapshot.getInt(20) != layout.FLAGS || snapshot.getInt(24) != layout.BLOCK_SIZE) {
+            return null;
+        }
+
+        String[] keys = new String[numberOfBlocks];
+        int entries = snapshot.getInt(28);
+        int offset = HEADER_SIZE;
+
+        try {
+            for (int i = 0; i < entries; i++) {
+                int blockNum = snapshot.getInt(offset);
+
+                if (blockNum < 1 || blockNum > numberOfBlocks) {
+                    return null;
+                }
+
+                String key = RecordCodec.decode(snapshot, offset + 8);
+                headers[blockNum - 1] = snapshot.getInt(offset + 4);
+                keys[blockNum - 1] = key.length() > 0 ? key : null;
+                offset += 8 + 2 + Short.toUnsignedInt(snapshot.getShort(offset + 8));
+            }
+        } catch (IOException | IndexOutOfBoundsException e) {
+            return null;
+        }
+        return keys;
+    }
+
+    /**
+     * Replaces the snapshot with the table's current keys and headers and forces it to the storage device. The table must already be forced,
+     * since the snapshot claims everything in it is durable.
+     *
+     * @param layout The layout of the table's blocks.
+     * @param keys The keys, indexed by block number - 1. Null or empty for blocks that aren't in use.
+     * @param headers The header of each block, indexed like the keys. 0 for empty blocks.
+     * @return True if operation successful.
+     */
+    boolean write(BlockLayout layout, String[] keys, int[] headers) {
+        String error = "TableSnapshot write: ";
+        int length = HEADER_SIZE;
+        int entries = 0;
+
+        for (int i = 0; i < keys.length; i++) {
+            if (headers[i] != 0) {
+                length += 8 + RecordCodec.slotLength(keys[i] == null ? "" : keys[i]);
+                entries++;
+            }
+        }
+
+        ByteBuffer snapshot = ByteBuffer.allocate(length);
+        int offset = HEADER_SIZE;
+
+        snapshot.putInt(0, MAGIC).putInt(4, VERSION).putInt(STATE_OFFSET, CURRENT);
+        snapshot.putInt(16, keys.length).putInt(20, layout.FLAGS).putInt(24, layout.BLOCK_SIZE).putInt(28, entries);
+
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                if (headers[i] != 0) {
+                    snapshot.putInt(offset, i + 1).putInt(offset + 4, headers[i]);
+                    offset += 8 + RecordCodec.encode(keys[i] == null ? "" : keys[i], snapshot, offset + 8);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println(error + e);
+            return false;
+        }
+        snapshot.putInt(12, checksum(snapshot));
+
+        return SAVE.setLength(length) && SAVE.writeBytes(snapshot, 0) && SAVE.force();
+    }
+
+    /**
+     * @return the checksum of the snapshot, which identifies the keys and headers it was written with. 0 if no snapshot was ever written.
+     */
+    int getChecksum() {
+        return SAVE.getFileLength() < HEADER_SIZE ? 0 : SAVE.readInt(12);
+    }
+
+    /**
+     * Marks the snapshot stale and forces the mark, so a table that changes after this is never started from the old snapshot.
+     *
+     * @return True if operation successful.
+     */
+    boolean invalidate() {
+        if (SAVE.getFileLength() < HEADER_SIZE) {
+            return true;                                                //No snapshot was ever written.
+        }
+        return SAVE.writeInt(STALE, STATE_OFFSET) && SAVE.force();
+    }
+
+    /**
+     * Closes the snapshot file.
+     */
+    @Override
+    public void close() {
+        SAVE.close();
+    }
+
+    /**
+     * Works out the checksum of everything after the first 16 bytes of a snapshot.
+     *
+     * @param snapshot The snapshot.
+     * @return The checksum.
+     */
+    private static int checksum(ByteBuffer snapshot) {
+        CRC32C crc = new CRC32C();
+        crc.update(snapshot.array(), snapshot.arrayOffset() + 16, snapshot.limit() - 16);
+        return (int) crc.getValue();
+    }
+}
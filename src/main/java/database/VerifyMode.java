@@ -0,0 +1,22 @@
+package database;
+
+/**
+ * How often a StorageHashTable checks a block's checksum when it reads the block.
+ *
+ * @author Jiyansh Agarwal
+ */
+public enum VerifyMode {
+
+    /**
+     * Every block read is checked. A block that fails is treated as unreadable.
+     */
+    ALWAYS,
+    /**
+     * One in every 16 block reads is checked, which still finds a damaged table quickly while hot lookups skip the check.
+     */
+    SAMPLED,
+    /**
+     * Checksums are still written but never checked on read.
+     */
+    OFF
+}
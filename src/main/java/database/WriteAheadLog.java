@@ -0,0 +1,573 @@
+package database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * A log of changes to one or more StorageHashTables that makes every change in a transaction happen together or not at all. A transaction is
+ * written to the log as a single record and, with the default SYNC durability, made durable before any table is touched, so the tables
+ * themselves can be written with <code>Durability.NONE</code> and never forced on their own. Commits from several threads share a single
+ * force of the log. Once the log grows past its checkpoint size every table is forced and the log is emptied.
+ * <p>
+ * A transaction is refused before it is logged if a change is invalid or a table doesn't have room for the entries it adds, so a commit
+ * doesn't make some changes and then find the next one can't be made. What is left is an I/O error while the tables are changed, which
+ * can still leave a transaction partly made, and <code>commit</code> returns false when that happens.
+ * <p>
+ * Each record is a four byte payload length, a CRC32C of the payload and the payload: the number of changes, then for each change its type,
+ * the name the table was registered under, the key and the records. Changes are logical, so replaying a record that was already applied
+ * leaves the tables the same. When a table is opened after a crash, <code>recover</code> replays every complete record and stops at the
+ * first one that was only partly written.
+ *
+ * @author Jiyansh Agarwal
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    final static private byte PUT = 1;
+    final static private byte DELETE = 2;
+    final static private int HEADER_SIZE = 8;
+    final static private long DEFAULT_CHECKPOINT_SIZE = 1024 * 1024;
+
+    final private DataSaver SAVE;
+    final private Durability DURABILITY;
+    final private long CHECKPOINT_SIZE;
+
+    final private Map<String, StorageHashTable> tables = new LinkedHashMap<>();
+    final private Map<StorageHashTable, String> names = new IdentityHashMap<>();
+
+    final private Object appendLock = new Object();
+    final private Object applyLock = new Object();
+    private long end = 0;                                           //Where the next record is written.
+    private long appended = 0;                                      //Number of records written since the log was opened.
+    private long applied = 0;                                       //Number of those records applied to the tables.
+    final private AtomicLong durabilityFailures = new AtomicLong();
+    final private Map<StorageHashTable, Integer> pendingAdds = new IdentityHashMap<>();   //Entries logged transactions add once applied.
+
+    /**
+     * Opens the log, creating it if it doesn't exist. Every commit is forced to the storage device before it returns. Call
+     * <code>register</code> for every table and then <code>recover</code> before committing anything.
+     *
+     * @param path Path of the log file.
+     * @param options How the log is stored. The log of tables kept in memory is also kept in memory. Its durability is ignored, since that
+     * is the durability of the tables.
+     */
+    public WriteAheadLog(String path, StorageOptions options) {
+        this(path, options, Durability.SYNC, DEFAULT_CHECKPOINT_SIZE);
+    }
+
+    /**
+     * Opens the log, creating it if it doesn't exist. Call <code>register</code> for every table and then <code>recover</code> before
+     * committing anything.
+     *
+     * @param path Path of the log file.
+     * @param options How the log is stored. The log of tables kept in memory is also kept in memory. Its durability is ignored, since that
+     * is the durability of the tables.
+     * @param durability How durable a transaction is once it commits.
+     */
+    public WriteAheadLog(String path, StorageOptions options, Durability durability) {
+        this(path, options, durability, DEFAULT_CHECKPOINT_SIZE);
+    }
+
+    /**
+     * Opens the log, creating it if it doesn't exist. Every commit is forced to the storage device before it returns. Call
+     * <code>register</code> for every table and then <code>recover</code> before committing anything.
+     *
+     * @param path Path of the log file.
+     * @param options How the log is stored. The log of tables kept in memory is also kept in memory. Its durability is ignored, since that
+     * is the durability of the tables.
+     * @param checkpointSize How large the log may grow in bytes before the tables are forced and the log is emptied.
+     */
+    public WriteAheadLog(String path, StorageOptions options, long checkpointSize) {
+        this(path, options, Durability.SYNC, checkpointSize);
+    }
+
+    /**
+     * Opens the log, creating it if it doesn't exist. Call <code>register</code> for every table and then <code>recover</code> before
+     * committing anything.
+     *
+     * @param path Path of the log file.
+     * @param options How the log is stored. The log of tables kept in memory is also kept in memory. Its durability is ignored, since that
+     * is the durability of the tables.
+     * @param durability How durable a transaction is once it commits. Anything but SYNC can lose the last transactions committed before a
+     * power loss, and with NONE a power loss can leave the tables part way through a transaction.
+     * @param checkpointSize How large the log may grow in bytes before the tables are forced and the log is emptied.
+     */
+    public WriteAheadLog(String path, StorageOptions options, Durability durability, long checkpointSize) {
+        String error = "WriteAheadLog Constructor: ";
+
+        //-------------------------------[Input Validation]------------------------
+        try {
+            if (path == null || options == null || durability == null) {
+                throw new NullPointerException(error + "Null path, options or durability");
+            }
+            if (checkpointSize <= 0) {
+                throw new IOException(error + "Checkpoint size must be greater than 0!");
+            }
+        } catch (IOException e) {
+            System.out.println(error + e);
+        }
+        //-------------------------------------------------------------------------
+
+        StorageOptions logOptions = new StorageOptions().storageType(options.isInMemory() ? options.getStorageType() : StorageType.FILE);
+
+        DURABILITY = durability;
+        CHECKPOINT_SIZE = checkpointSize;
+        SAVE = new DataSaver(path, checkpointSize, logOptions);
+    }
+
+    /**
+     * Lets transactions change a table and lets <code>recover</code> replay changes made to it. The name is stored in the log, so a table must
+     * be registered under the same name every time it is opened.
+     *
+     * @param name The name to log the table's changes under.
+     * @param table The table.
+     */
+    public void register(String name, StorageHashTable table) {
+        synchronized (appendLock) {
+            tables.put(name, table);
+            names.put(table, name);
+        }
+    }
+
+    /**
+     * Replays every complete transaction in the log into the registered tables, then forces the tables and empties the log. Safe to call when
+     * the log is empty, and safe to repeat if it is interrupted.
+     *
+     * @return The number of transactions replayed. -1 if the log could not be read or the tables could not be checkpointed.
+     */
+    public int recover() {
+        String error = "WriteAheadLog recover: ";
+        int replayed = 0;
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+        synchronized (appendLock) {
+            while (true) {
+                header.clear();
+
+                if (!SAVE.readBytes(header, position)) {
+                    break;                                              //Past the end of the log.
+                }
+
+                int length = header.getInt(0);
+
+                if (length <= 0 || length > SAVE.getFileLength() - position - HEADER_SIZE) {
+                    break;                                              //Zeros after the last record, or a record cut off part way.
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length);
+
+                if (!SAVE.readBytes(payload, position + HEADER_SIZE) || header.getInt(4) != checksum(payload)) {
+                    System.out.println(error + "Record at " + position + " was only partly written and is ignored.");
+                    break;
+                }
+
+                //The record is intact, so a change that can't be made is reported and the rest of the log is still replayed.
+                try {
+                    apply(payload);
+                } catch (IOException e) {
+                    System.out.println(error + "Record at " + position + " could not be fully replayed. " + e);
+                }
+                position += HEADER_SIZE + length;
+                replayed++;
+            }
+        }
+
+        if (!checkpoint()) {
+            return -1;
+        }
+        return replayed;
+    }
+
+    /**
+     * Starts a transaction. Nothing is changed until it is committed.
+     *
+     * @return The transaction.
+     */
+    public Transaction begin() {
+        return new Transaction();
+    }
+
+    /**
+     * Forces every registered table to the storage device and empties the log. Waits for transactions already in the log to be applied first.
+     *
+     * @return True if operation successful.
+     */
+    public boolean checkpoint() {
+        String error = "WriteAheadLog checkpoint: ";
+
+        synchronized (appendLock) {
+            try {
+                synchronized (applyLock) {
+                    while (applied != appended) {
+                        applyLock.wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.out.println(error + e);
+                return false;
+            }
+
+            for (StorageHashTable table : tables.values()) {
+                if (!table.force()) {
+                    System.out.println(error + "A table could not be forced, so the log is kept.");
+                    return false;
+                }
+            }
+
+            //Once the tables hold every change the log isn't needed. A crash before it is emptied only replays changes already made.
+            if (!SAVE.clearFile() || !SAVE.force()) {
+                return false;
+            }
+            end = 0;
+            return true;
+        }
+    }
+
+    /**
+     * @return the number of bytes of transactions waiting for the next checkpoint.
+     */
+    public long size() {
+        synchronized (appendLock) {
+            return end;
+        }
+    }
+
+    /**
+     * @return the number of transactions that were applied but whose record could not be made as durable as the log's durability asks for.
+     */
+    public long getDurabilityFailures() {
+        return durabilityFailures.get();
+    }
+
+    /**
+     * Checkpoints the tables and closes the log. The tables are left open.
+     */
+    @Override
+    public void close() {
+        checkpoint();
+        SAVE.close();
+    }
+
+    /**
+     * Writes a transaction to the log, makes it durable, then applies it to the tables in the same order transactions were written. A record
+     * that could not be made durable is still applied and counted in <code>getDurabilityFailures</code>.
+     *
+     * @param payload The encoded transaction.
+     * @param adds The number of new entries the transaction adds to each table.
+     * @return True if the transaction was logged and applied.
+     */
+    private boolean commit(ByteBuffer payload, Map<StorageHashTable, Integer> adds) {
+        String error = "WriteAheadLog commit: ";
+        long sequence;
+        boolean full;
+
+        synchronized (appendLock) {
+            //Transactions logged but not applied yet have room set aside for their entries too.
+            for (Map.Entry<StorageHashTable, Integer> add : adds.entrySet()) {
+                if (add.getKey().room() < pendingAdds.getOrDefault(add.getKey(), 0) + add.getValue()) {
+                    System.out.println(error + "Transaction refused, since " + names.get(add.getKey()) + " doesn't have room for it.");
+                    return false;
+                }
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(0, payload.limit()).putInt(4, checksum(payload));
+
+            if (!SAVE.writeBytes(header, end) || !SAVE.writeBytes(payload, end + HEADER_SIZE)) {
+                System.out.println(error + "Transaction could not be logged.");
+                return false;                                           //The next record overwrites whatever was written.
+            }
+            end += HEADER_SIZE + payload.limit();
+            sequence = ++appended;
+            full = end >= CHECKPOINT_SIZE;
+
+            for (Map.Entry<StorageHashTable, Integer> add : adds.entrySet()) {
+                pendingAdds.merge(add.getKey(), add.getValue(), Integer::sum);
+            }
+        }
+
+        boolean logged = SAVE.commit(DURABILITY);                       //Threads committing together share one force.
+        boolean done = true;
+
+        boolean interrupted = false;
+
+        synchronized (applyLock) {
+            //Keeps waiting through interrupts, since applying out of turn would leave the transactions before it waiting forever.
+            while (applied != sequence - 1) {
+                try {
+                    applyLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            //A record that may not be durable is still applied, so later transactions never see tables that skipped it.
+            try {
+                apply(payload.rewind());
+            } catch (IOException e) {
+                System.out.println(error + e);
+                done = false;
+            }
+            applied = sequence;
+            applyLock.notifyAll();
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        //Taken after the apply lock is let go, since a checkpoint holds this lock while it waits for transactions to be applied.
+        synchronized (appendLock) {
+            for (Map.Entry<StorageHashTable, Integer> add : adds.entrySet()) {
+                pendingAdds.computeIfPresent(add.getKey(), (table, count) -> count - add.getValue() == 0 ? null : count - add.getValue());
+            }
+        }
+
+        if (full) {
+            checkpoint();
+        }
+
+        if (!logged) {
+            durabilityFailures.incrementAndGet();
+            System.out.println(error + "Transaction was made but could not be made durable.");
+        }
+        return done;
+    }
+
+    /**
+     * Applies every change in an encoded transaction to its table.
+     *
+     * @param payload The encoded transaction, starting at position 0.
+     * @throws IOException if the transaction is damaged, names a table that isn't registered or a change could not be made.
+     */
+    private void apply(ByteBuffer payload) throws IOException {
+        int changes = Short.toUnsignedInt(payload.getShort(0));
+        int offset = 2;
+        IOException failure = null;
+
+        for (int i = 0; i < changes; i++) {
+            byte type = payload.get(offset);
+            String name = RecordCodec.decode(payload, offset + 1);
+            offset += 1 + 2 + Short.toUnsignedInt(payload.getShort(offset + 1));
+            String key = RecordCodec.decode(payload, offset);
+            offset += 2 + Short.toUnsignedInt(payload.getShort(offset));
+
+            String[] records = null;
+
+            if (type == PUT) {
+                records = new String[Short.toUnsignedInt(payload.getShort(offset))];
+                offset += 2;
+
+                for (int r = 0; r < records.length; r++) {
+                    records[r] = RecordCodec.decode(payload, offset);
+                    offset += 2 + Short.toUnsignedInt(payload.getShort(offset));
+                }
+            } else if (type != DELETE) {
+                throw new IOException("Unknown change type " + type + "!");
+            }
+
+            StorageHashTable table = tables.get(name);
+
+            if (table == null) {
+                throw new IOException("Table \"" + name + "\" isn't registered with the log!");
+            }
+
+            //Every change is made even if an earlier one fails, so a replay ends up the same as the first time.
+            if (!applyChange(table, type, key, records) && failure == null) {
+                failure = new IOException("Change to \"" + key + "\" in " + name + " could not be made!");
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Makes one change to a table. A put adds the entry if the key is new and replaces its records otherwise, and deleting a key that isn't
+     * there does nothing, so applying a change twice is the same as applying it once.
+     *
+     * @param table The table to change.
+     * @param type PUT or DELETE.
+     * @param key The key to change.
+     * @param records The records to put. Null for a delete.
+     * @return True if the table holds the change.
+     */
+    private static boolean applyChange(StorageHashTable table, byte type, String key, String[] records) {
+        boolean present = table.containsKey(key);
+
+        if (type == DELETE) {
+            return !present || table.deleteEntry(key, Durability.NONE) != null;
+        } else if (present) {
+            return table.changeRecords(key, records, Durability.NONE) != null;
+        }
+        return table.addEntry(key, records, Durability.NONE) != -1;
+    }
+
+    /**
+     * Works out the checksum of a record's payload.
+     *
+     * @param payload The payload.
+     * @return The checksum.
+     */
+    private static int checksum(ByteBuffer payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload.array(), payload.arrayOffset(), payload.limit());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A group of changes to registered tables that is logged and applied as a whole.
+     */
+    public class Transaction {
+
+        final private ArrayList<Object[]> changes = new ArrayList<>();
+        private int length = 2;
+        private boolean valid = true;
+
+        private Transaction() {
+        }
+
+        /**
+         * Adds an entry, or replaces its records if the key is already in the table.
+         *
+         * @param table The table to change. Must be registered with the log.
+         * @param key The key.
+         * @param records The records. These must fit the table's record sizes.
+         * @return this transaction.
+         */
+        public Transaction put(StorageHashTable table, String key, String[] records) {
+            String error = "WriteAheadLog put: ";
+
+            //-------------------------------[Input Validation]------------------------
+            try {
+                checkTable(table);
+
+                if (records == null || !table.fits(key, records)) {
+                    throw new IOException(error + "\"" + key + "\" doesn't fit in the table!");
+                }
+            } catch (IOException e) {
+                System.out.println(e);
+                valid = false;
+                return this;
+            }
+            //-------------------------------------------------------------------------
+
+            length += 1 + RecordCodec.slotLength(names.get(table)) + RecordCodec.slotLength(key) + 2;
+
+            for (String record : records) {
+                length += RecordCodec.slotLength(record);
+            }
+            changes.add(new Object[]{PUT, table, key, records.clone()});
+            return this;
+        }
+
+        /**
+         * Deletes an entry. Does nothing if the key isn't in the table.
+         *
+         * @param table The table to change. Must be registered with the log.
+         * @param key The key to delete.
+         * @return this transaction.
+         */
+        public Transaction delete(StorageHashTable table, String key) {
+            String error = "WriteAheadLog delete: ";
+
+            //-------------------------------[Input Validation]------------------------
+            try {
+                checkTable(table);
+
+                if (!table.fits(key, null)) {
+                    throw new IOException(error + "\"" + key + "\" isn't a valid key for the table!");
+                }
+            } catch (IOException e) {
+                System.out.println(e);
+                valid = false;
+                return this;
+            }
+            //-------------------------------------------------------------------------
+
+            length += 1 + RecordCodec.slotLength(names.get(table)) + RecordCodec.slotLength(key);
+            changes.add(new Object[]{DELETE, table, key, null});
+            return this;
+        }
+
+        /**
+         * Logs every change, makes the log as durable as its options ask for and then makes the changes. Either every change is made or, if
+         * the program stops part way, every change is made when the log is recovered. If the log can't be made durable the changes are still
+         * made and this still returns true, but a crash before the next checkpoint can lose them. That is counted in
+         * <code>getDurabilityFailures</code>.
+         *
+         * @return True if every change was made. False, with nothing changed, if a change was invalid, a table didn't have room for the
+         * entries it adds or it could not be logged. Also false if a change could not be made once logged, in which case the changes that
+         * could be made were made and the rest were not.
+         */
+        public boolean commit() {
+            if (!valid || changes.isEmpty() || changes.size() > 65535) {
+                return valid && changes.isEmpty();
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            Map<StorageHashTable, HashSet<String>> newKeys = new IdentityHashMap<>();
+            int offset = 2;
+
+            payload.putShort(0, (short) changes.size());
+
+            try {
+                for (Object[] change : changes) {
+                    byte type = (Byte) change[0];
+                    String[] records = (String[]) change[3];
+
+                    payload.put(offset, type);
+                    offset += 1;
+                    offset += RecordCodec.encode(names.get((StorageHashTable) change[1]), payload, offset);
+                    offset += RecordCodec.encode((String) change[2], payload, offset);
+
+                    //Collects every key a put adds, so commit can check the table has room before anything is logged.
+                    if (type == PUT && !((StorageHashTable) change[1]).containsKey((String) change[2])) {
+                        newKeys.computeIfAbsent((StorageHashTable) change[1], table -> new HashSet<>()).add((String) change[2]);
+                    }
+
+                    if (type == PUT) {
+                        payload.putShort(offset, (short) records.length);
+                        offset += 2;
+
+                        for (String record : records) {
+                            offset += RecordCodec.encode(record, payload, offset);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("WriteAheadLog commit: " + e);
+                return false;
+            }
+
+            Map<StorageHashTable, Integer> adds = new IdentityHashMap<>();
+
+            for (Map.Entry<StorageHashTable, HashSet<String>> keys : newKeys.entrySet()) {
+                adds.put(keys.getKey(), keys.getValue().size());
+            }
+            return WriteAheadLog.this.commit(payload, adds);
+        }
+
+        /**
+         * Checks that a table is registered with the log.
+         *
+         * @param table The table.
+         * @throws IOException if it isn't.
+         */
+        private void checkTable(StorageHashTable table) throws IOException {
+            synchronized (appendLock) {
+                if (!names.containsKey(table)) {
+                    throw new IOException("Table isn't registered with the log!");
+                }
+            }
+        }
+    }
+}
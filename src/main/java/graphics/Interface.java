@@ -4,13 +4,20 @@ import account.LoginManager;
 import java.awt.CardLayout;
 import java.awt.Image;
 import java.awt.Toolkit;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import javax.swing.DefaultListModel;
 import javax.swing.ImageIcon;
 import javax.swing.JCheckBox;
 import javax.swing.JOptionPane;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import library.Library;
 
 /**
@@ -19,9 +26,17 @@ import library.Library;
  */
 public class Interface extends javax.swing.JFrame {
 
-    final private LoginManager login = new LoginManager("Login Data.library", 10);
+    //Opened on the worker thread, since opening them can replay the log or migrate the files. Every call that uses them runs after that.
+    private volatile LoginManager login;
 
-    final private Library library = new Library("Book Data.library", "Student List.library", 2000, 100);
+    private volatile Library library;
+
+    //Runs the library calls one at a time off the event dispatch thread, so the window doesn't freeze while the files are read or written.
+    final private ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Library");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Creates new form Interface
@@ -30,9 +45,85 @@ public class Interface extends javax.swing.JFrame {
     public Interface() {
         initComponents();
 
-        String[] books = library.getBooks();
-        String[] students = library.getStudents();
+        //Closes the data files when the application exits, after the library calls already asked for have finished.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            worker.shutdown();
+
+            try {
+                worker.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (library != null) {
+                library.close();
+            }
+            if (login != null) {
+                login.close();
+            }
+        }));
+
+        //Logging in waits until the files are open.
+        LoginButton.setEnabled(false);
+        SignUpButton.setEnabled(false);
+        ErrorText.setText("Loading...");
+
+        //Opens the files and reads the books and students on the worker thread, then fills the lists once they have been read.
+        inBackground(() -> {
+            login = new LoginManager("Login Data.library", 10);
+            library = new Library("Book Data.library", "Student List.library", 2000, 100);
+
+            String[] books = library.getBooks();
+            String[] students = library.getStudents();
+
+            //Reads every book and student once, in file order, instead of looking each one up again for every list.
+            Map<String, String[]> bookInfo = library.getBookInfo(Arrays.asList(books));
+            Map<String, String[]> studentInfo = library.getStudentInfo(Arrays.asList(students));
+
+            Runnable fill = () -> {
+                fillLists(books, students, bookInfo, studentInfo);
+                LoginButton.setEnabled(true);
+                SignUpButton.setEnabled(true);
+                ErrorText.setText("");
+            };
+            return fill;
+        }, Runnable::run);
+
+        //Scales the icons to the right size;
+        ImageIcon menuIcons = new ImageIcon(Toolkit.getDefaultToolkit().getImage(getClass().getResource("Student Raising Hand.jpeg")));
+        ImageIcon scaled = new ImageIcon(menuIcons.getImage().getScaledInstance(900, 600, Image.SCALE_SMOOTH));
+        Picture.setIcon(scaled);
+
+        menuIcons = new ImageIcon(Toolkit.getDefaultToolkit().getImage(getClass().getResource("Logout Icon.png")));
+        scaled = new ImageIcon(menuIcons.getImage().getScaledInstance(20, 20, Image.SCALE_SMOOTH));
+        LogoutIcon.setIcon(scaled);
+
+        menuIcons = new ImageIcon(Toolkit.getDefaultToolkit().getImage(getClass().getResource("Home Icon.png")));
+        scaled = new ImageIcon(menuIcons.getImage().getScaledInstance(40, 40, Image.SCALE_SMOOTH));
+        HomeIcon.setIcon(scaled);
+
+        menuIcons = new ImageIcon(Toolkit.getDefaultToolkit().getImage(getClass().getResource("Search Icon.png")));
+        scaled = new ImageIcon(menuIcons.getImage().getScaledInstance(40, 40, Image.SCALE_SMOOTH));
+        SearchIcon.setIcon(scaled);
+
+        menuIcons = new ImageIcon(Toolkit.getDefaultToolkit().getImage(getClass().getResource("Checkout Icon.png")));
+        scaled = new ImageIcon(menuIcons.getImage().getScaledInstance(40, 25, Image.SCALE_SMOOTH));
+        CheckoutIcon.setIcon(scaled);
+
+        menuIcons = new ImageIcon(Toolkit.getDefaultToolkit().getImage(getClass().getResource("Student Icon.png")));
+        scaled = new ImageIcon(menuIcons.getImage().getScaledInstance(40, 40, Image.SCALE_SMOOTH));
+        StudentIcon.setIcon(scaled);
+    }
 
+    /**
+     * Fills the lists with the books and students read when the window opened.
+     *
+     * @param books Every book in the library.
+     * @param students Every student in the library.
+     * @param bookInfo The information of each book.
+     * @param studentInfo The information of each student.
+     */
+    private void fillLists(String[] books, String[] students, Map<String, String[]> bookInfo, Map<String, String[]> studentInfo) {
         //Fills all the lists with the books.
         for (String title : books) {
             ((DefaultListModel) BookList.getModel()).addElement(title);
@@ -47,51 +138,47 @@ public class Interface extends javax.swing.JFrame {
             ((DefaultListModel) CheckoutStudentList.getModel()).addElement(student);
             ((DefaultListModel) ST_StudentList.getModel()).addElement(student);
 
-            if (Integer.parseInt(library.getStudentInfo(student)[4]) > mostBooksRead_num) {
+            String[] info = studentInfo.get(student);
+
+            if (info != null && Integer.parseInt(info[4]) > mostBooksRead_num) {
                 mostBooksRead = student;
-                mostBooksRead_num = Integer.parseInt(library.getStudentInfo(student)[4]);
+                mostBooksRead_num = Integer.parseInt(info[4]);
             }
         }
         ST_MostBooksRead.setText(mostBooksRead);
 
         //Fills the home page students with book checkout list.
         for (String student : students) {
-            if (library.numOfBooksCheckedOutByStudent(student) > 0) {                       //If student has at least 1 book.
+            if (studentInfo.containsKey(student) && Integer.parseInt(studentInfo.get(student)[0]) > 0) {                       //If student has at least 1 book.
                 ((DefaultListModel) StudentsCheckedOut.getModel()).addElement(student);
             }
         }
 
         //Fills the checked out book list with books
         for (String title : books) {
-            if (library.bookIsCheckedOut(title)) {
+            if (bookInfo.containsKey(title) && bookInfo.get(title)[3].equals("0")) {              //Available flag is off.
                 ((DefaultListModel) CheckedOutList.getModel()).addElement(title);
             }
         }
+    }
 
-        //Scales the icons to the right size;
-        ImageIcon menuIcons = new ImageIcon(Toolkit.getDefaultToolkit().getImage(getClass().getResource("Student Raising Hand.jpeg")));
-        ImageIcon scaled = new ImageIcon(menuIcons.getImage().getScaledInstance(900, 600, Image.SCALE_SMOOTH));
-        Picture.setIcon(scaled);
-
-        menuIcons = new ImageIcon(Toolkit.getDefaultToolkit().getImage(getClass().getResource("Logout Icon.png")));
-        scaled = new ImageIcon(menuIcons.getImage().getScaledInstance(20, 20, Image.SCALE_SMOOTH));
-        LogoutIcon.setIcon(scaled);
-
-        menuIcons = new ImageIcon(Toolkit.getDefaultToolkit().getImage(getClass().getResource("Home Icon.png")));
-        scaled = new ImageIcon(menuIcons.getImage().getScaledInstance(40, 40, Image.SCALE_SMOOTH));
-        HomeIcon.setIcon(scaled);
-
-        menuIcons = new ImageIcon(Toolkit.getDefaultToolkit().getImage(getClass().getResource("Search Icon.png")));
-        scaled = new ImageIcon(menuIcons.getImage().getScaledInstance(40, 40, Image.SCALE_SMOOTH));
-        SearchIcon.setIcon(scaled);
-
-        menuIcons = new ImageIcon(Toolkit.getDefaultToolkit().getImage(getClass().getResource("Checkout Icon.png")));
-        scaled = new ImageIcon(menuIcons.getImage().getScaledInstance(40, 25, Image.SCALE_SMOOTH));
-        CheckoutIcon.setIcon(scaled);
-
-        menuIcons = new ImageIcon(Toolkit.getDefaultToolkit().getImage(getClass().getResource("Student Icon.png")));
-        scaled = new ImageIcon(menuIcons.getImage().getScaledInstance(40, 40, Image.SCALE_SMOOTH));
-        StudentIcon.setIcon(scaled);
+    /**
+     * Runs a library call on the worker thread, in the order the calls were asked for, then hands its result to <code>update</code> on the
+     * event dispatch thread. If the call throws, its message is shown instead.
+     *
+     * @param <T> The type of the result.
+     * @param task The library call.
+     * @param update Updates the window with the result.
+     */
+    private <T> void inBackground(Callable<T> task, Consumer<T> update) {
+        worker.execute(() -> {
+            try {
+                T result = task.call();
+                SwingUtilities.invokeLater(() -> update.accept(result));
+            } catch (Exception e) {
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
+            }
+        });
     }
 
     /**
@@ -1555,25 +1642,31 @@ public class Interface extends javax.swing.JFrame {
     private void LoginButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_LoginButtonActionPerformed
         ErrorText.setText("");
 
-        if (!login.isEmpty()) {
-            String username = Username.getText().trim();
-            char[] password = Password.getPassword();
+        String username = Username.getText().trim();
+        char[] password = Password.getPassword();
 
-            if (username.length() > 100) {
-                ErrorText.setText("Username is too long.");
+        //Gives the error to show, or an empty string once logged in.
+        inBackground(() -> {
+            if (login.isEmpty()) {
+                return "No accounts added. Click 'Sign Up' to add account";
+            } else if (username.length() > 100) {
+                return "Username is too long.";
             } else if (username.length() < 1 || password.length < 1) {
-                ErrorText.setText("Please fill out both the username and password.");
+                return "Please fill out both the username and password.";
             } else if (login.authenticate(username, password)) {
+                return "";
+            }
+            LoginManager.wipePassword(password);
+            return "Incorrect username or password.";
+        }, message -> {
+            if (message.isEmpty()) {
                 CardLayout card = (CardLayout) Main.getLayout();
                 HomeWelcome.setText("Welcome " + username + "!");
                 card.show(Main, "LoggedIn");
             } else {
-                ErrorText.setText("Incorrect username or password.");
-                LoginManager.wipePassword(password);
+                ErrorText.setText(message);
             }
-        } else {
-            ErrorText.setText("No accounts added. Click 'Sign Up' to add account");
-        }
+        });
     }//GEN-LAST:event_LoginButtonActionPerformed
 
     private void SignUpButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_SignUpButtonActionPerformed
@@ -1582,42 +1675,40 @@ public class Interface extends javax.swing.JFrame {
         String username = Username.getText().trim();
         char[] password = Password.getPassword();
 
-        if (username.length() > 100) {
-            ErrorText.setText("Username is too long.");
-        } else if (username.length() < 1 || password.length < 1) {
-            ErrorText.setText("Username or password cannot be blank.");
-        } else if (login.usernameAlreadyExists(username)) {
-            ErrorText.setText("Username already exists.");
-        } else if (!login.addAccount(username, username, password)) {
-            ErrorText.setText("All available accounts are used up.");
-        } else {
-            ErrorText.setText("Account added!");
-        }
+        inBackground(() -> {
+            if (username.length() > 100) {
+                return "Username is too long.";
+            } else if (username.length() < 1 || password.length < 1) {
+                return "Username or password cannot be blank.";
+            } else if (login.usernameAlreadyExists(username)) {
+                return "Username already exists.";
+            } else if (!login.addAccount(username, username, password)) {
+                return "All available accounts are used up.";
+            }
+            return "Account added!";
+        }, ErrorText::setText);
     }//GEN-LAST:event_SignUpButtonActionPerformed
 
     private void RemoveAccountMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_RemoveAccountMouseClicked
         ErrorText.setText("");
 
-        if (!login.isEmpty()) {
-            String username = Username.getText().trim();
-            char[] password = Password.getPassword();
+        String username = Username.getText().trim();
+        char[] password = Password.getPassword();
 
-            if (username.length() > 100) {
-                ErrorText.setText("Username is too long.");
+        inBackground(() -> {
+            if (login.isEmpty()) {
+                return "No accounts added. Click 'Sign Up' to add account";
+            } else if (username.length() > 100) {
+                return "Username is too long.";
             } else if (username.length() < 1 || password.length < 1) {
-                ErrorText.setText("Please fill out both the username and password.");
-            } else if (login.authenticate(username, password)) {
-                if (login.removeAccount(username)) {
-                    ErrorText.setText("Account removed");
-                } else {
-                    ErrorText.setText("There was an error. Account NOT removed.");
-                }
-            } else {
-                ErrorText.setText("Incorrect username or password.");
+                return "Please fill out both the username and password.";
+            } else if (!login.authenticate(username, password)) {
+                return "Incorrect username or password.";
+            } else if (login.removeAccount(username)) {
+                return "Account removed";
             }
-        } else {
-            ErrorText.setText("No accounts added. Click 'Sign Up' to add account");
-        }
+            return "There was an error. Account NOT removed.";
+        }, ErrorText::setText);
     }//GEN-LAST:event_RemoveAccountMouseClicked
 
     private void SearchButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_SearchButtonActionPerformed
@@ -1742,25 +1833,26 @@ public class Interface extends javax.swing.JFrame {
                     "Proceed?", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
 
             if (checkout == JOptionPane.YES_OPTION) {
+                String mostBooksRead = ST_MostBooksRead.getText();
 
-                try {
+                inBackground(() -> {
                     library.checkOutBook(book, student);
 
+                    String[] mostInfo = library.getStudentInfo(mostBooksRead);
+                    return mostInfo == null || Integer.parseInt(library.getStudentInfo(student)[4]) > Integer.parseInt(mostInfo[4]);
+                }, readsMost -> {
                     ((DefaultListModel) CheckedOutList.getModel()).addElement(book);
 
                     if (!((DefaultListModel) StudentsCheckedOut.getModel()).contains(student)) {
                         ((DefaultListModel) StudentsCheckedOut.getModel()).addElement(student);
                     }
 
-                    if (Integer.parseInt(library.getStudentInfo(student)[4])
-                            > Integer.parseInt(library.getStudentInfo(ST_MostBooksRead.getText())[4])) {
+                    if (readsMost) {
                         ST_MostBooksRead.setText(student);
                     }
 
                     JOptionPane.showMessageDialog(null, book + " checked out to " + student + "!", "Checkout Complete", JOptionPane.INFORMATION_MESSAGE);
-                } catch (IOException e) {
-                    JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                });
             }
         }
     }//GEN-LAST:event_CheckoutButtonActionPerformed
@@ -1770,17 +1862,20 @@ public class Interface extends javax.swing.JFrame {
 
         if (student == null) {
             JOptionPane.showMessageDialog(null, "Student not selected!", "Error", JOptionPane.ERROR_MESSAGE);
-        } else if (library.numOfBooksCheckedOutByStudent(student) == 0) {
-            JOptionPane.showMessageDialog(null, student + " has no books.", "Error", JOptionPane.ERROR_MESSAGE);
-        } else {
-            int numOfBooks = library.numOfBooksCheckedOutByStudent(student);
+            return;
+        }
+
+        inBackground(() -> library.numOfBooksCheckedOutByStudent(student) == 0 ? new String[0] : library.getStudentBooks(student), books -> {
+            if (books.length == 0) {
+                JOptionPane.showMessageDialog(null, student + " has no books.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
-            Object[] questions = new Object[numOfBooks + 1];
+            Object[] questions = new Object[books.length + 1];
 
             questions[0] = "Select the books you want to checkin for this student.";
-            String[] books = library.getStudentBooks(student);
 
-            for (int i = 0; i < numOfBooks; i++) {
+            for (int i = 0; i < books.length; i++) {
                 questions[i + 1] = new JCheckBox(books[i]);
             }
 
@@ -1797,10 +1892,11 @@ public class Interface extends javax.swing.JFrame {
                     }
                 }
 
-                try {
+                inBackground(() -> {
                     library.checkInBook(booksToCheckIn.toArray(new String[booksToCheckIn.size()]), student);
-
-                    if (library.numOfBooksCheckedOutByStudent(student) == 0) {
+                    return library.numOfBooksCheckedOutByStudent(student);
+                }, booksLeft -> {
+                    if (booksLeft == 0) {
                         ((DefaultListModel) StudentsCheckedOut.getModel()).removeElement(student);
                     }
 
@@ -1809,11 +1905,9 @@ public class Interface extends javax.swing.JFrame {
                     }
 
                     JOptionPane.showMessageDialog(null, "Books from " + student + " checked in!", "Checkin Complete", JOptionPane.INFORMATION_MESSAGE);
-                } catch (IOException e) {
-                    JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                });
             }
-        }
+        });
 
     }//GEN-LAST:event_CheckinButtonActionPerformed
 
@@ -1859,33 +1953,39 @@ public class Interface extends javax.swing.JFrame {
         String name = JOptionPane.showInputDialog(null, "Name of student to remove?", "Remove Student", JOptionPane.QUESTION_MESSAGE);
 
         if (name != null) {
-            name = name.trim();
-            try {
-                if (library.removeStudent(name)) {
-
-                    ((DefaultListModel) CheckoutStudentList.getModel()).removeElement(name);
-                    ((DefaultListModel) ST_StudentList.getModel()).removeElement(name);
-
-                    if (name.equals(ST_MostBooksRead.getText())) {
-                        String mostBooksRead = "";
-                        int mostBooksRead_num = 0;
-
-                        for (String student : library.getStudents()) {
-                            if (Integer.parseInt(library.getStudentInfo(student)[4]) > mostBooksRead_num) {
-                                mostBooksRead = student;
-                                mostBooksRead_num = Integer.parseInt(library.getStudentInfo(student)[4]);
-                            }
-                        }
-                        ST_MostBooksRead.setText(mostBooksRead);
-                    }
+            String student = name.trim();
+            String current = ST_MostBooksRead.getText();
+
+            //Gives the student who has read the most books after the removal. Null if the student wasn't removed.
+            inBackground(() -> {
+                if (!library.removeStudent(student)) {
+                    return null;
+                }
+                if (!student.equals(current)) {
+                    return current;
+                }
 
-                    JOptionPane.showMessageDialog(null, name + " removed!", "Message", JOptionPane.INFORMATION_MESSAGE);
+                String mostBooksRead = "";
+                int mostBooksRead_num = 0;
+
+                for (String other : library.getStudents()) {
+                    if (Integer.parseInt(library.getStudentInfo(other)[4]) > mostBooksRead_num) {
+                        mostBooksRead = other;
+                        mostBooksRead_num = Integer.parseInt(library.getStudentInfo(other)[4]);
+                    }
+                }
+                return mostBooksRead;
+            }, mostBooksRead -> {
+                if (mostBooksRead != null) {
+                    ((DefaultListModel) CheckoutStudentList.getModel()).removeElement(student);
+                    ((DefaultListModel) ST_StudentList.getModel()).removeElement(student);
+                    ST_MostBooksRead.setText(mostBooksRead);
+
+                    JOptionPane.showMessageDialog(null, student + " removed!", "Message", JOptionPane.INFORMATION_MESSAGE);
                 } else {
                     JOptionPane.showMessageDialog(null, "Oops! Looks like something went wrong", "Error", JOptionPane.ERROR_MESSAGE);
                 }
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            });
         }
     }//GEN-LAST:event_RemoveStudentButtonActionPerformed
 
@@ -1893,20 +1993,19 @@ public class Interface extends javax.swing.JFrame {
         String name = JOptionPane.showInputDialog(null, "Name of student to add?", "Add Student", JOptionPane.QUESTION_MESSAGE);
 
         if (name != null) {
-            name = name.trim();
-            try {
-                if (library.addStudent(name)) {
+            String student = name.trim();
 
-                    ((DefaultListModel) CheckoutStudentList.getModel()).addElement(name);
-                    ((DefaultListModel) ST_StudentList.getModel()).addElement(name);
+            inBackground(() -> library.addStudent(student), added -> {
+                if (added) {
 
-                    JOptionPane.showMessageDialog(null, name + " added!", "Message", JOptionPane.INFORMATION_MESSAGE);
+                    ((DefaultListModel) CheckoutStudentList.getModel()).addElement(student);
+                    ((DefaultListModel) ST_StudentList.getModel()).addElement(student);
+
+                    JOptionPane.showMessageDialog(null, student + " added!", "Message", JOptionPane.INFORMATION_MESSAGE);
                 } else {
                     JOptionPane.showMessageDialog(null, "Oops! Looks like something went wrong", "Error", JOptionPane.ERROR_MESSAGE);
                 }
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            });
         }
     }//GEN-LAST:event_AddStudentButtonActionPerformed
 
@@ -1942,8 +2041,8 @@ public class Interface extends javax.swing.JFrame {
             String pageCount = pageCountField.getText().trim();
             String language = languageField.getText().trim();
 
-            try {
-                if (library.addBook(title, author, pageCount, language)) {
+            inBackground(() -> library.addBook(title, author, pageCount, language), added -> {
+                if (added) {
                     ((DefaultListModel) BookList.getModel()).addElement(title);
                     ((DefaultListModel) CheckoutBookList.getModel()).addElement(title);
 
@@ -1951,9 +2050,7 @@ public class Interface extends javax.swing.JFrame {
                 } else {
                     JOptionPane.showMessageDialog(null, "Oops! Looks like something went wrong", "Error", JOptionPane.ERROR_MESSAGE);
                 }
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            });
         }
     }//GEN-LAST:event_AddBookButtonActionPerformed
 
@@ -1961,19 +2058,18 @@ public class Interface extends javax.swing.JFrame {
         String bookToRemove = JOptionPane.showInputDialog(null, "Name of book to remove:", "Remove Book", JOptionPane.QUESTION_MESSAGE);
 
         if (bookToRemove != null) {
-            bookToRemove = bookToRemove.trim();
-            try {
-                if (library.removeBook(bookToRemove)) {
-                    ((DefaultListModel) BookList.getModel()).removeElement(bookToRemove);
-                    ((DefaultListModel) CheckoutBookList.getModel()).removeElement(bookToRemove);
+            String title = bookToRemove.trim();
+
+            inBackground(() -> library.removeBook(title), removed -> {
+                if (removed) {
+                    ((DefaultListModel) BookList.getModel()).removeElement(title);
+                    ((DefaultListModel) CheckoutBookList.getModel()).removeElement(title);
 
-                    JOptionPane.showMessageDialog(null, bookToRemove + " removed!", "Remove Book", JOptionPane.INFORMATION_MESSAGE);
+                    JOptionPane.showMessageDialog(null, title + " removed!", "Remove Book", JOptionPane.INFORMATION_MESSAGE);
                 } else {
                     JOptionPane.showMessageDialog(null, "Oops! Looks like something went wrong", "Error", JOptionPane.ERROR_MESSAGE);
                 }
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            });
         }
     }//GEN-LAST:event_RemoveBookButtonActionPerformed
 
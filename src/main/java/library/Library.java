@@ -1,42 +1,99 @@
 package library;
 
+import database.Durability;
+import database.Schema;
 import database.StorageHashTable;
+import database.StorageOptions;
+import database.WriteAheadLog;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  *
  * @author Jiyansh
  */
-public class Library {
+public class Library implements AutoCloseable {
 
     final private StorageHashTable booksTable;
     final private StorageHashTable studentsTable;
+    final private WriteAheadLog log;
 
+    final private String bookFileName;
+    final private String studentFileName;
     final private int maxBooks;
     final private int maxStudents;
 
-    private ArrayList<String> books = new ArrayList<>();
-    private ArrayList<String> students = new ArrayList<>();
+    //Changed by one thread while others read them, so every read works on a snapshot that a change can't tear.
+    final private List<String> books = new CopyOnWriteArrayList<>();
+    final private List<String> students = new CopyOnWriteArrayList<>();
 
     public Library(String bookFileName, String studentFileName, int maxNumOfBooks, int maxNumOfStudents) {
-        booksTable = new StorageHashTable(System.getProperty("user.dir"), bookFileName, maxNumOfBooks, 100, 5, new int[]{100, 5, 10, 1, 100});
-        studentsTable = new StorageHashTable(System.getProperty("user.dir"), studentFileName, maxNumOfStudents, 100, 5, new int[]{1, 100, 100, 100, 3});
+        //Adding a book or student first checks its key isn't taken, which the Bloom filter answers without probing. Every commit forces the
+        //log, which is what lets the tables skip forcing.
+        this(bookFileName, studentFileName, maxNumOfBooks, maxNumOfStudents,
+                new StorageOptions().bloomFilter(0.01).durability(Durability.SYNC));
+    }
 
+    /**
+     * Opens the library's book and student tables with the given storage options. With an in memory storage type the library starts empty and
+     * nothing is written to disk until <code>saveTo</code> is called. Every change goes through a write ahead log kept next to the book table,
+     * which is made as durable as the options ask for, while the tables themselves are written with <code>Durability.NONE</code> and never
+     * forced on each write. Changes left in the log by a crash are replayed here.
+     *
+     * @param bookFileName Name of the book table file.
+     * @param studentFileName Name of the student table file.
+     * @param maxNumOfBooks The most books the library can hold.
+     * @param maxNumOfStudents The most students the library can hold.
+     * @param options How both tables and the log are stored. Its durability is the log's. Only SYNC keeps every committed change through a
+     * power loss.
+     */
+    public Library(String bookFileName, String studentFileName, int maxNumOfBooks, int maxNumOfStudents, StorageOptions options) {
+        String directory = System.getProperty("user.dir");
+        StorageOptions tableOptions = options.copy().durability(Durability.NONE);
+
+        //Counts and the availability flag are stored as binary fields. Tables saved when every record was a String are migrated once.
+        Schema bookSchema = new Schema().addString(100).addInt().addString(10).addBoolean().addString(100)
+                .storedAsStrings(100, 5, 10, 1, 100);
+        Schema studentSchema = new Schema().addShort().addString(100).addString(100).addString(100).addInt()
+                .storedAsStrings(1, 100, 100, 100, 3);
+
+        booksTable = new StorageHashTable(directory, bookFileName, maxNumOfBooks, 100, bookSchema, tableOptions);
+        studentsTable = new StorageHashTable(directory, studentFileName, maxNumOfStudents, 100, studentSchema, tableOptions);
+
+        log = new WriteAheadLog(directory + File.separator + bookFileName.substring(0, bookFileName.indexOf('.')) + ".wal", options,
+                options.getDurability());
+        log.register(bookFileName, booksTable);
+        log.register(studentFileName, studentsTable);
+        log.recover();
+
+        this.bookFileName = bookFileName;
+        this.studentFileName = studentFileName;
         maxBooks = maxNumOfBooks;
         maxStudents = maxNumOfStudents;
-        
+
+        //Filled in one go, since each add to the lists copies them.
+        ArrayList<String> keys = new ArrayList<>();
+
         for (String book : booksTable.getKeys()) {
             if (book != null && book.length() > 0) {
-                books.add(book);
+                keys.add(book);
             }
         }
+        books.addAll(keys);
+        keys.clear();
+
         for (String student : studentsTable.getKeys()) {
             if (student != null && student.length() > 0) {
-                students.add(student);
+                keys.add(student);
             }
         }
+        students.addAll(keys);
     }
 
     /**
@@ -44,7 +101,7 @@ public class Library {
      *
      * @param title the book title. Must be under 100 characters.
      * @param author the author. Must be under 100 characters.
-     * @param pageCount the number of pages in the book. Must be under 5 characters (i.e. under 100,000 pages).
+     * @param pageCount the number of pages in the book. Must be a number under 5 characters (i.e. under 100,000 pages).
      * @param language the language the book is written in. Must be under 10 characters.
      * @return true if successfully added.
      * @throws IOException if book title or data is longer than acceptable length.
@@ -58,13 +115,15 @@ public class Library {
             throw new IOException("All fields must be filled!");
         } else if (title.length() > 100 || author.length() > 100 || pageCount.length() > 5 || language.length() > 10) {
             throw new IOException("Field has too many characters!");
+        } else if (!pageCount.matches("[0-9]+")) {
+            throw new IOException("Page count must be a number!");
         } else if (booksTable.containsKey(title)) {
             throw new IOException(title + " is already in the system!");
-        } else if (booksTable.addEntry(title, new String[]{author, pageCount, language, "1", ""}) != -1) {
-            books.add(title);
-            return true;
         }
-        return false;
+
+        boolean added = log.begin().put(booksTable, title, new String[]{author, pageCount, language, "1", ""}).commit();
+        track(books, booksTable, title);
+        return added;
     }
 
     /**
@@ -81,13 +140,13 @@ public class Library {
             throw new IOException(title + " has too many characters!");
         } else if (!booksTable.containsKey(title)) {
             throw new IOException(title + " isn't in the system");
-        } else if (Integer.parseInt(booksTable.readEntry(title)[3]) == 0) {
+        } else if (!booksTable.getBoolean(title, 3)) {
             throw new IOException(title + " is checked out. Check it in first!");
-        } else if (booksTable.deleteEntry(title) != null) {
-            books.remove(title);
-            return true;
         }
-        return false;
+
+        boolean removed = log.begin().delete(booksTable, title).commit();
+        track(books, booksTable, title);
+        return removed;
     }
 
     /**
@@ -108,11 +167,11 @@ public class Library {
             throw new IOException(name + " has too many characters!");
         } else if (studentsTable.containsKey(name)) {
             throw new IOException(name + " is already in the system.");
-        } else if (studentsTable.addEntry(name, new String[]{"0", "", "", "", "0"}) != -1) {
-            students.add(name);
-            return true;
         }
-        return false;
+
+        boolean added = log.begin().put(studentsTable, name, new String[]{"0", "", "", "", "0"}).commit();
+        track(students, studentsTable, name);
+        return added;
     }
 
     /**
@@ -129,13 +188,13 @@ public class Library {
             throw new IOException(name + " has too many characters!");
         } else if (!studentsTable.containsKey(name)) {
             throw new IOException(name + " isn't in the system.");
-        } else if (Integer.parseInt(studentsTable.readEntry(name)[0]) > 0) {
+        } else if (studentsTable.getShort(name, 0) > 0) {
             throw new IOException(name + " has books checked out. Check those in before removing student.");
-        } else if (studentsTable.deleteEntry(name) != null) {
-            students.remove(name);
-            return true;
         }
-        return false;
+
+        boolean removed = log.begin().delete(studentsTable, name).commit();
+        track(students, studentsTable, name);
+        return removed;
     }
 
     /**
@@ -153,12 +212,12 @@ public class Library {
             throw new IOException(student + "not in the system!");
         } else if (!booksTable.containsKey(book)) {
             throw new IOException(book + " not in the system!");
-        } else if (Integer.parseInt(booksTable.readEntry(book)[3]) == 0) {
+        } else if (!booksTable.getBoolean(book, 3)) {
             throw new IOException(book + " has already been checked out.");
-        } else if (Integer.parseInt(studentsTable.readEntry(student)[0]) >= 3) {
+        } else if (studentsTable.getShort(student, 0) >= 3) {
             throw new IOException(student + " has already checked out 3 books. No more are allowed.");
-        } else if (book.equals(studentsTable.readEntry(student)[1]) || book.equals(studentsTable.readEntry(student)[2])
-                || book.equals(studentsTable.readEntry(student)[3])) {
+        } else if (book.equals(studentsTable.getRecord(student, 1)) || book.equals(studentsTable.getRecord(student, 2))
+                || book.equals(studentsTable.getRecord(student, 3))) {
             throw new IOException(student + " has already checked out this book.");
         } else {
 
@@ -182,10 +241,8 @@ public class Library {
             bookData[3] = "0";
             bookData[4] = student;
 
-            studentsTable.changeRecords(student, studentData);
-            booksTable.changeRecords(book, bookData);
-
-            return true;
+            //Both changes are logged together, so a crash never leaves the student holding a book that is still marked available.
+            return log.begin().put(studentsTable, student, studentData).put(booksTable, book, bookData).commit();
         }
     }
 
@@ -203,7 +260,7 @@ public class Library {
             throw new IOException("Student not selected");
         } else if (!studentsTable.containsKey(student)) {
             throw new IOException(student + " not in the system!");
-        } else if (Integer.parseInt(studentsTable.readEntry(student)[0]) == 0) {
+        } else if (studentsTable.getShort(student, 0) == 0) {
             throw new IOException(student + " has no books.");
         }
 
@@ -212,7 +269,7 @@ public class Library {
                 throw new IOException("Book not selected!");
             } else if (!booksTable.containsKey(book)) {
                 throw new IOException(book + " not in the system!");
-            } else if (!booksTable.readEntry(book)[4].equals(student)) {
+            } else if (!student.equals(booksTable.getRecord(book, 4))) {
                 throw new IOException(book + " is checked out to different student.");
             }
         }
@@ -228,23 +285,40 @@ public class Library {
             }
         }
 
+        //The student and every book change in one transaction, which also shares a single flush.
+        WriteAheadLog.Transaction transaction = log.begin().put(studentsTable, student, studentData);
+
         for (String book : books) {
             String[] bookData = booksTable.readEntry(book);
             bookData[3] = "1";
             bookData[4] = "";
-            booksTable.changeRecords(book, bookData);
+            transaction.put(booksTable, book, bookData);
         }
+        return transaction.commit();
+    }
 
-        studentsTable.changeRecords(student, studentData);
-        return true;
+    /**
+     * Keeps a list of keys in step with its table after a commit, so a commit that reports a failure after the table changed doesn't leave
+     * the list out of date.
+     *
+     * @param keys The list of keys.
+     * @param table The table the keys are in.
+     * @param key The key that was committed.
+     */
+    private static void track(List<String> keys, StorageHashTable table, String key) {
+        if (table.containsKey(key) && !keys.contains(key)) {
+            keys.add(key);
+        } else if (!table.containsKey(key)) {
+            keys.remove(key);
+        }
     }
 
     public String[] getBooks() {
-        return books.toArray(new String[books.size()]);
+        return books.toArray(new String[0]);
     }
 
     public String[] getStudents() {
-        return students.toArray(new String[students.size()]);
+        return students.toArray(new String[0]);
     }
     
     public String[] getBookInfo(String book) {        
@@ -267,6 +341,26 @@ public class Library {
         return studentsTable.readEntry(student);
     }
 
+    /**
+     * Gets the info of several books in one pass over the books table.
+     *
+     * @param books The titles of the books.
+     * @return The info of each book, by title. Books that don't exist are left out. Null if books is null.
+     */
+    public Map<String, String[]> getBookInfo(Collection<String> books) {
+        return booksTable.readEntries(books);
+    }
+
+    /**
+     * Gets the info of several students in one pass over the students table.
+     *
+     * @param students The names of the students.
+     * @return The info of each student, by name. Students that don't exist are left out. Null if students is null.
+     */
+    public Map<String, String[]> getStudentInfo(Collection<String> students) {
+        return studentsTable.readEntries(students);
+    }
+
     /**
      * Gets a list of books currently checked out by a student.
      *
@@ -278,7 +372,7 @@ public class Library {
             return null;
         } else if (!studentsTable.containsKey(student)) {
             return null;
-        } else if (Integer.parseInt(studentsTable.readEntry(student)[0]) == 0) {
+        } else if (studentsTable.getShort(student, 0) == 0) {
             return null;
         }
         
@@ -306,7 +400,7 @@ public class Library {
             return -1;
         }
 
-        return Integer.parseInt(studentsTable.readEntry(student)[0]);
+        return studentsTable.getShort(student, 0);
     }
 
     public boolean bookIsCheckedOut(String book) {
@@ -316,6 +410,30 @@ public class Library {
             return false;
         }
 
-        return Integer.parseInt(booksTable.readEntry(book)[3]) == 0;
+        return !booksTable.getBoolean(book, 3);
+    }
+
+    /**
+     * Saves the book and student tables to a directory under their usual file names, replacing any files already there. Used to keep a
+     * library that was run in memory.
+     *
+     * @param directory The directory to save the tables in.
+     * @return true if both tables were saved.
+     */
+    public boolean saveTo(String directory) {
+        return booksTable.saveTo(directory, bookFileName) && studentsTable.saveTo(directory, studentFileName);
+    }
+
+    /**
+     * Checkpoints the log and closes it along with the book and student tables. Each table writes a snapshot first, so the next library
+     * starts from the snapshots instead of rebuilding every key.
+     */
+    @Override
+    public void close() {
+        log.close();
+        booksTable.checkpoint();
+        studentsTable.checkpoint();
+        booksTable.close();
+        studentsTable.close();
     }
 }